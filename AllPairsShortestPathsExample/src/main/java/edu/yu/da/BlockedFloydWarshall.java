@@ -0,0 +1,149 @@
+package edu.yu.da;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/** Floyd-Warshall over a DistanceMatrix, in place, one tile of TILE*TILE
+ * cells at a time so the three tiles an update touches stay in cache.
+ *
+ * For each diagonal tile kb in turn:
+ * - the TILE rows of kb are copied out whole into a strip, where the diagonal
+ *   tile is closed over its own intermediate cities and then the rest of the
+ *   strip is updated through it, in parallel, before the strip is written
+ *   back.  The rows of kb are also its columns, the matrix being symmetric
+ * - every remaining tile (ib,jb) on or above the diagonal is updated through
+ *   (ib,kb) and (kb,jb), both read from the strip, in parallel
+ * which gives the same distances as the plain triple loop, since every tile
+ * only reads tiles that are final for the intermediate cities of kb.
+ *
+ * Only the triangle DistanceMatrix keeps is ever touched, so beyond it the
+ * memory needed is the strip, TILE*n longs, and a tile per thread.
+ *
+ * DistanceMatrix.INFINITY is no path.  A path through a missing leg is at
+ * least that long, so it never replaces a shorter one.
+ */
+class BlockedFloydWarshall {
+    private static final int TILE=64;
+    private final DistanceMatrix d;
+    private final int n;
+    private final int tiles;
+    private final long[][] strip;   // strip[r][j] = the distance from city kb*TILE+r to j, for the kb in progress
+    /**
+     * @param d the distances, updated in place
+     */
+    public BlockedFloydWarshall(DistanceMatrix d){
+        this.d=d;
+        this.n=d.size();
+        this.tiles=(n+TILE-1)/TILE;
+        this.strip=new long[Math.min(TILE,n)][n];
+    }
+    public void run(int threads){
+        ForkJoinPool pool=new ForkJoinPool(threads);
+        ThreadLocal<long[]> tile=ThreadLocal.withInitial(()->new long[TILE*TILE]);
+        try{
+            for(int kb=0;kb<tiles;kb++){
+                final int k=kb;
+                final int kStart=kb*TILE;
+                pool.submit(()->IntStream.range(0,kStart).parallel().forEach(j->copyColumn(k,j,tile.get()))).join();
+                copyRows(k);
+                relax(k,k);
+                // the rest of the strip, through the closed diagonal tile
+                pool.submit(()->IntStream.range(0,tiles).parallel().forEach(jb->{
+                    if(jb!=k) relax(k,jb);
+                })).join();
+                pool.submit(()->IntStream.range(0,kStart).parallel().forEach(j->writeColumn(k,j,tile.get()))).join();
+                writeRows(k);
+                pool.submit(()->IntStream.range(0,tiles*tiles).parallel().forEach(t->{
+                    int ib=t/tiles, jb=t%tiles;
+                    if(ib>jb||ib==k||jb==k) return;
+                    relax(ib,jb,k,tile.get());
+                })).join();
+            }
+        }
+        finally{
+            pool.shutdown();
+        }
+    }
+    // the distances from j, left of tile kb, to the cities of kb, into column j of the strip
+    private void copyColumn(int kb, int j, long[] buffer){
+        int kStart=kb*TILE;
+        int kEnd=Math.min(n,kStart+TILE);
+        d.copyRange(j,kStart,kEnd,buffer,0);
+        for(int r=0;r<kEnd-kStart;r++){
+            strip[r][j]=buffer[r];
+        }
+    }
+    private void writeColumn(int kb, int j, long[] buffer){
+        int kStart=kb*TILE;
+        int kEnd=Math.min(n,kStart+TILE);
+        for(int r=0;r<kEnd-kStart;r++){
+            buffer[r]=strip[r][j];
+        }
+        d.setRange(j,kStart,kEnd,buffer,0);
+    }
+    // the rows of tile kb from the diagonal on, and the cells of the diagonal tile below it by symmetry
+    private void copyRows(int kb){
+        int kStart=kb*TILE;
+        int kEnd=Math.min(n,kStart+TILE);
+        for(int i=kStart;i<kEnd;i++){
+            d.copyRange(i,i,n,strip[i-kStart],i);
+            for(int j=kStart;j<i;j++){
+                strip[i-kStart][j]=strip[j-kStart][i];
+            }
+        }
+    }
+    private void writeRows(int kb){
+        int kStart=kb*TILE;
+        int kEnd=Math.min(n,kStart+TILE);
+        for(int i=kStart;i<kEnd;i++){
+            d.setRange(i,i,n,strip[i-kStart],i);
+        }
+    }
+    // relaxes the strip's columns of tile jb through the intermediate cities of kb
+    private void relax(int kb, int jb){
+        int kStart=kb*TILE;
+        int kEnd=Math.min(n,kStart+TILE);
+        int jStart=jb*TILE;
+        int jEnd=Math.min(n,jStart+TILE);
+        for(int k=kStart;k<kEnd;k++){
+            long[] kRow=strip[k-kStart];
+            for(int i=kStart;i<kEnd;i++){
+                long[] iRow=strip[i-kStart];
+                long ik=iRow[k];
+                if(ik==DistanceMatrix.INFINITY) continue;
+                for(int j=jStart;j<jEnd;j++){
+                    if(ik+kRow[j]<iRow[j]) iRow[j]=ik+kRow[j];
+                }
+            }
+        }
+    }
+    // relaxes every cell of tile (ib,jb), ib <= jb, on or above the diagonal through the intermediate cities of kb
+    private void relax(int ib, int jb, int kb, long[] tile){
+        int iStart=ib*TILE;
+        int iEnd=Math.min(n,iStart+TILE);
+        int jStart=jb*TILE;
+        int jEnd=Math.min(n,jStart+TILE);
+        int kStart=kb*TILE;
+        int kEnd=Math.min(n,kStart+TILE);
+        for(int i=iStart;i<iEnd;i++){
+            int from=Math.max(i,jStart);
+            d.copyRange(i,from,jEnd,tile,(i-iStart)*TILE+from-jStart);
+        }
+        for(int k=kStart;k<kEnd;k++){
+            // the strip holds row k, and column k as well by symmetry
+            long[] kRow=strip[k-kStart];
+            for(int i=iStart;i<iEnd;i++){
+                long ik=kRow[i];
+                if(ik==DistanceMatrix.INFINITY) continue;
+                int offset=(i-iStart)*TILE-jStart;
+                for(int j=Math.max(i,jStart);j<jEnd;j++){
+                    if(ik+kRow[j]<tile[offset+j]) tile[offset+j]=ik+kRow[j];
+                }
+            }
+        }
+        for(int i=iStart;i<iEnd;i++){
+            int from=Math.max(i,jStart);
+            d.setRange(i,from,jEnd,tile,(i-iStart)*TILE+from-jStart);
+        }
+    }
+}
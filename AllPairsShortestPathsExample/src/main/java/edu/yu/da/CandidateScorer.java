@@ -0,0 +1,353 @@
+package edu.yu.da;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/** Scores candidate segments against the all pairs distances of the current
+ * communication system: by how much adding each one lowers the total duration
+ * over all pairs of cities.
+ *
+ * While some cities can't reach each other the total duration is infinite,
+ * so a score has two parts, compared in order: how many pairs i <= j of
+ * cities the segment connects for the first time, and by how much it lowers
+ * the sum of the distances of the pairs that are connected, which counts the
+ * distances of the newly connected pairs against it.  When every city is
+ * reachable the first part is always 0.
+ *
+ * When every city is reachable and no distance plus a candidate's duration
+ * plus another distance can reach Integer.MAX_VALUE, a batch is scored with
+ * plain int loops over the rows, only the gains being added up in long.
+ * Otherwise it is scored in long straight off the distances: no sum of
+ * finite distances reaches DistanceMatrix.INFINITY and no sum of three
+ * distances overflows, so a path through a missing one is simply at least
+ * INFINITY, and the loop over a row turns each comparison into a mask rather
+ * than a branch.
+ *
+ * A candidate whose ends are already no further apart than its duration can't
+ * shorten anything, and scores 0 without a scan.  The rest are scored in
+ * batches: each row of the distance triangle is read once per batch and
+ * applied to every candidate in it while it is still in cache.  Batches are
+ * scored in parallel.
+ *
+ * rank keeps only the k best candidates, scoring them from the highest upper
+ * bound down and stopping as soon as the next bound can't beat the k-th best
+ * score.
+ */
+class CandidateScorer {
+    // candidates sharing one pass over the triangle
+    private static final int BATCH=16;
+    private final DistanceMatrix distances;
+    private final int n;
+    // the longest distance between two cities, INFINITY if some can't reach each other
+    private final long longest;
+    /**
+     * the buffers one thread needs to score a batch or bound a candidate, reused from batch to batch
+     */
+    class Workspace{
+        private final long[] copy=new long[n];
+        private final long[] nearX=new long[n];
+        private final long[] nearY=new long[n];
+        private final long[] prefix=new long[n+1];      // prefix[b] = the sum of the b least of nearY, prefix[0] = 0
+        private final int[] narrowRow=new int[n];
+        private final int[][] narrowFromX=new int[BATCH][n];
+        private final int[][] narrowFromY=new int[BATCH][n];
+        private final long[] row=new long[n];
+        private final long[][] fromX=new long[BATCH][n];    // fromX[c][j] = distance from the x end of candidate c to j
+        private final long[][] fromY=new long[BATCH][n];
+        private final int[] narrowLength=new int[BATCH];
+        private final long[] length=new long[BATCH];
+        private final long[] joined=new long[BATCH];
+        private final long[] gain=new long[BATCH];
+    }
+    /**
+     * where the batches of one score or rank call are scored: on the calling thread, or on a pool of threads each
+     * with a workspace of its own.  Either way the threads and workspaces last the whole call, however many rounds
+     * of batches it scores
+     */
+    class ScoringPool{
+        private final Workspace caller=new Workspace();     // the calling thread's, also used by rank for bounds
+        private final ForkJoinPool pool;                    // null when scoring on the calling thread
+        private final ThreadLocal<Workspace> workers=ThreadLocal.withInitial(Workspace::new);
+        ScoringPool(int threads){
+            this.pool=threads==1?null:new ForkJoinPool(threads);
+        }
+        // scores candidates pending[0..count-1] into scores
+        void score(List<? extends WeAreAllConnectedBase.SegmentBase> candidates, int[] pending, int count, Scores scores){
+            int batches=(count+BATCH-1)/BATCH;
+            if(pool==null){
+                for(int b=0;b<batches;b++){
+                    scoreBatch(candidates,pending,b*BATCH,Math.min(count,(b+1)*BATCH),scores,caller);
+                }
+                return;
+            }
+            pool.submit(()->IntStream.range(0,batches).parallel().forEach(b->
+                scoreBatch(candidates,pending,b*BATCH,Math.min(count,(b+1)*BATCH),scores,workers.get()))).join();
+        }
+        void shutdown(){
+            if(pool!=null) pool.shutdown();
+        }
+    }
+    /**
+     * a score per candidate: joined[c] pairs connected for the first time, and then gain[c] off the sum of the
+     * distances of connected pairs
+     */
+    static class Scores{
+        final long[] joined;
+        final long[] gain;
+        Scores(int candidates){
+            this.joined=new long[candidates];
+            this.gain=new long[candidates];
+        }
+        // above 0 if candidate a scores higher than candidate b
+        int compare(int a, int b){
+            if(joined[a]!=joined[b]) return Long.compare(joined[a],joined[b]);
+            return Long.compare(gain[a],gain[b]);
+        }
+    }
+    public CandidateScorer(DistanceMatrix distances){
+        this.distances=distances;
+        this.n=distances.size();
+        long longest=0;
+        long[] row=new long[n];
+        for(int i=0;i<n&&longest!=DistanceMatrix.INFINITY;i++){
+            distances.copyRow(i,row);
+            for(int j=i;j<n;j++){
+                longest=Math.max(longest,row[j]);
+            }
+        }
+        this.longest=longest;
+    }
+    /**
+     * @param candidates the segments to score
+     * @param threads the number of threads to score them on
+     * @return the score of adding each of candidates
+     */
+    public Scores score(List<? extends WeAreAllConnectedBase.SegmentBase> candidates, int threads){
+        Scores scores=new Scores(candidates.size());
+        int[] pending=new int[candidates.size()];
+        int count=0;
+        for(int c=0;c<candidates.size();c++){
+            WeAreAllConnectedBase.SegmentBase sb=candidates.get(c);
+            if(distances.get(sb.x,sb.y)>sb.duration) pending[count++]=c;
+        }
+        ScoringPool pool=new ScoringPool(threads);
+        try{
+            pool.score(candidates,pending,count,scores);
+        }
+        finally{
+            pool.shutdown();
+        }
+        return scores;
+    }
+    /**
+     * @param candidates the segments to rank
+     * @param k how many of them to keep, must be at least 1
+     * @param threads the number of threads to score them on
+     * @return the indices into candidates of the (at most) k best, best first, with ties in candidates' order, and
+     * the scores of every candidate, of which only those ranked are sure to have been computed
+     */
+    public Ranking rank(List<? extends WeAreAllConnectedBase.SegmentBase> candidates, int k, int threads){
+        ScoringPool pool=new ScoringPool(threads);
+        try{
+            return rank(candidates,k,threads,pool);
+        }
+        finally{
+            pool.shutdown();
+        }
+    }
+    private Ranking rank(List<? extends WeAreAllConnectedBase.SegmentBase> candidates, int k, int threads, ScoringPool pool){
+        Scores scores=new Scores(candidates.size());
+        long[] bound=new long[candidates.size()];
+        for(int c=0;c<candidates.size();c++){
+            bound[c]=bound(candidates.get(c),pool.caller);
+        }
+        Integer[] order=new Integer[candidates.size()];
+        for(int c=0;c<order.length;c++) order[c]=c;
+        Arrays.sort(order,(a,b)->Long.compare(bound[b],bound[a]));
+        // the worst of the best k so far on top: the lowest score, and of equal scores the latest candidate
+        Comparator<Integer> worstFirst=(a,b)->scores.compare(a,b)!=0?scores.compare(a,b):Integer.compare(b,a);
+        PriorityQueue<Integer> best=new PriorityQueue<>(k+1,worstFirst);
+        int[] pending=new int[candidates.size()];
+        int next=0;
+        while(next<order.length){
+            // every candidate left is bounded by this one's bound, and one can only displace a strictly lower score
+            if(best.size()==k&&beats(scores,best.peek(),bound[order[next]])) break;
+            int count=0;
+            int start=next;
+            for(;next<order.length&&count<BATCH*threads;next++){
+                int c=order[next];
+                // a bound of at most 0 is a candidate that can't shorten anything, so it scores 0 without a scan
+                if(bound[c]>0) pending[count++]=c;
+            }
+            pool.score(candidates,pending,count,scores);
+            for(int t=start;t<next;t++){
+                best.add(order[t]);
+                if(best.size()>k) best.poll();
+            }
+        }
+        int[] indices=new int[best.size()];
+        for(int r=indices.length-1;r>=0;r--){
+            indices[r]=best.poll();
+        }
+        return new Ranking(indices,scores);
+    }
+    // the indices rank keeps, best first, and their scores
+    static class Ranking{
+        final int[] indices;
+        final Scores scores;
+        Ranking(int[] indices, Scores scores){
+            this.indices=indices;
+            this.scores=scores;
+        }
+    }
+    // whether candidate c scores strictly higher than anything bound can, Long.MAX_VALUE being no bound at all
+    private static boolean beats(Scores scores, int c, long bound){
+        if(bound==Long.MAX_VALUE) return false;
+        return scores.joined[c]>0||scores.gain[c]>bound;
+    }
+    /**
+     * an upper bound on the gain of sb, or Long.MAX_VALUE if its ends can't reach each other yet, since then it
+     * connects pairs.  Otherwise it only shortens pairs within the ends' part of the system, where the triangle
+     * inequality holds.  A pair i, j can only get shorter going i to x, across to y and on to j if i is nearer x than
+     * y by more than the duration, by some a(i), and j nearer y than x by more than the duration, by some b(j); and
+     * it can get shorter by at most min(a(i), b(j)).  Summing that over every such pair takes a sort of the b's
+     */
+    private long bound(WeAreAllConnectedBase.SegmentBase sb, Workspace w){
+        if(distances.get(sb.x,sb.y)==DistanceMatrix.INFINITY) return Long.MAX_VALUE;
+        long[] fromX=w.copy;
+        distances.copyAllFrom(sb.x,fromX);
+        long[] nearX=w.nearX;
+        long[] nearY=w.nearY;
+        for(int v=0;v<n;v++){
+            // cities the ends can't reach are left out, at 0
+            nearX[v]=fromX[v]==DistanceMatrix.INFINITY?0:fromX[v];
+        }
+        long[] fromY=w.copy;
+        distances.copyAllFrom(sb.y,fromY);
+        int countX=0, countY=0;
+        for(int v=0;v<n;v++){
+            if(fromY[v]==DistanceMatrix.INFINITY) continue;
+            long x=nearX[v];
+            long byX=fromY[v]-x-sb.duration;
+            long byY=x-fromY[v]-sb.duration;
+            if(byX>0) nearX[countX++]=byX;
+            if(byY>0) nearY[countY++]=byY;
+        }
+        if(countX==0||countY==0) return 0;
+        Arrays.sort(nearY,0,countY);
+        long[] prefix=w.prefix;
+        for(int b=0;b<countY;b++) prefix[b+1]=prefix[b]+nearY[b];
+        long bound=0;
+        for(int a=0;a<countX;a++){
+            // the b's below a(i) count themselves, the rest count a(i)
+            int below=Arrays.binarySearch(nearY,0,countY,nearX[a]);
+            if(below<0) below=-below-1;
+            bound+=prefix[below]+nearX[a]*(countY-below);
+        }
+        return bound;
+    }
+    // copies the distances from i to every city, which must fit in an int, into into
+    private void copyNarrow(int i, Workspace w, int[] into){
+        distances.copyAllFrom(i,w.copy);
+        for(int j=0;j<n;j++){
+            into[j]=(int)w.copy[j];
+        }
+    }
+    // scores the candidates pending[from..to-1], all together in one pass over the triangle
+    private void scoreBatch(List<? extends WeAreAllConnectedBase.SegmentBase> candidates, int[] pending, int from, int to,
+                            Scores scores, Workspace w){
+        long longestLength=0;
+        for(int c=from;c<to;c++){
+            longestLength=Math.max(longestLength,candidates.get(pending[c]).duration);
+        }
+        if(2*longest+longestLength<Integer.MAX_VALUE) scoreBatchNarrow(candidates,pending,from,to,scores,w);
+        else scoreBatchWide(candidates,pending,from,to,scores,w);
+    }
+    // scoreBatch when every city is reachable and no sum of two distances and a duration overflows an int
+    private void scoreBatchNarrow(List<? extends WeAreAllConnectedBase.SegmentBase> candidates, int[] pending, int from,
+                                  int to, Scores scores, Workspace w){
+        int size=to-from;
+        int[] length=w.narrowLength;
+        for(int c=0;c<size;c++){
+            WeAreAllConnectedBase.SegmentBase sb=candidates.get(pending[from+c]);
+            copyNarrow(sb.x,w,w.narrowFromX[c]);
+            copyNarrow(sb.y,w,w.narrowFromY[c]);
+            length[c]=sb.duration;
+            w.gain[c]=0;
+        }
+        int[] row=w.narrowRow;
+        for(int i=0;i<n;i++){
+            distances.copyRow(i,w.copy);
+            for(int j=i;j<n;j++){
+                row[j]=(int)w.copy[j];
+            }
+            for(int c=0;c<size;c++){
+                int[] fromX=w.narrowFromX[c];
+                int[] fromY=w.narrowFromY[c];
+                // the i end of each pair reaches the new segment at x or at y
+                int viaX=fromX[i]+length[c];
+                int viaY=fromY[i]+length[c];
+                long gain=0;
+                for(int j=i;j<n;j++){
+                    int current=row[j];
+                    int shortest=Math.min(current,Math.min(viaX+fromY[j],viaY+fromX[j]));
+                    gain+=current-shortest;
+                }
+                w.gain[c]+=gain;
+            }
+        }
+        for(int c=0;c<size;c++){
+            scores.joined[pending[from+c]]=0;
+            scores.gain[pending[from+c]]=w.gain[c];
+        }
+    }
+    // scoreBatch in long, for any distances
+    private void scoreBatchWide(List<? extends WeAreAllConnectedBase.SegmentBase> candidates, int[] pending, int from,
+                                int to, Scores scores, Workspace w){
+        int size=to-from;
+        long[] length=w.length;
+        for(int c=0;c<size;c++){
+            WeAreAllConnectedBase.SegmentBase sb=candidates.get(pending[from+c]);
+            distances.copyAllFrom(sb.x,w.fromX[c]);
+            distances.copyAllFrom(sb.y,w.fromY[c]);
+            length[c]=sb.duration;
+            w.joined[c]=0;
+            w.gain[c]=0;
+        }
+        long[] row=w.row;
+        for(int i=0;i<n;i++){
+            distances.copyRow(i,row);
+            for(int c=0;c<size;c++){
+                long[] fromX=w.fromX[c];
+                long[] fromY=w.fromY[c];
+                // the i end of each pair reaches the new segment at x or at y
+                long viaX=fromX[i]+length[c];
+                long viaY=fromY[i]+length[c];
+                // i can't reach the segment, so none of its pairs change
+                if(viaX>=DistanceMatrix.INFINITY&&viaY>=DistanceMatrix.INFINITY) continue;
+                long joined=0;
+                long gain=0;
+                for(int j=i;j<n;j++){
+                    long current=row[j];
+                    // at most INFINITY, since current is
+                    long shortest=Math.min(current,Math.min(viaX+fromY[j],viaY+fromX[j]));
+                    long wasConnected=(current-DistanceMatrix.INFINITY)>>63;     // all ones if current is finite, else 0
+                    long isConnected=(shortest-DistanceMatrix.INFINITY)>>63;
+                    long joins=isConnected&~wasConnected;
+                    gain+=((current-shortest)&wasConnected)-(shortest&joins);
+                    joined-=joins;
+                }
+                w.joined[c]+=joined;
+                w.gain[c]+=gain;
+            }
+        }
+        for(int c=0;c<size;c++){
+            scores.joined[pending[from+c]]=w.joined[c];
+            scores.gain[pending[from+c]]=w.gain[c];
+        }
+    }
+}
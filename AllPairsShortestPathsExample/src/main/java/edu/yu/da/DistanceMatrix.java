@@ -0,0 +1,235 @@
+package edu.yu.da;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.List;
+
+/** Shortest distances between every pair of n cities.  Distances are
+ * symmetric, so only the upper triangle (diagonal included) is stored, row by
+ * row in one flat run of cells: n(n+1)/2 cells instead of the n*n of a
+ * long[][] and none of its row objects.
+ *
+ * A cell is 4 bytes when every finite distance fits in an int, and 8 when it
+ * may not.  A shortest path uses each segment at most once, so the sum of all
+ * segment durations bounds every finite distance: while that sum stays below
+ * Integer.MAX_VALUE the cells are ints, the same footprint as the int[n][n]
+ * this replaced halved again by the triangle, and only a system whose
+ * durations add up past an int pays for long cells.  An int cell holds
+ * Integer.MAX_VALUE for no path.  Either way the cells are read and written
+ * as longs, so callers do their path arithmetic in longs and never see the
+ * width, but they must say up front how long a path can get, and widenTo
+ * before a new segment can make it longer.  Reading int cells costs a
+ * conversion per cell, which the halved memory traffic of copying rows more
+ * than pays for.
+ *
+ * No finite distance reaches INFINITY: in long cells it would take a path of
+ * more than 2^30 segments of the longest duration, far more cities than a
+ * triangle of them fits in memory.  INFINITY is small enough that the sum of
+ * any three distances, INFINITY included, stays below Long.MAX_VALUE, so a
+ * path through a missing leg is simply at least INFINITY, without an
+ * overflow check.
+ *
+ * The run is split into chunks of at most 2^27 cells, since a single Java
+ * array or buffer can't hold the triangle of a large city, and the chunks are
+ * either arrays on the heap or direct buffers outside it.
+ */
+class DistanceMatrix {
+    // the distance between cities with no path between them
+    public static final long INFINITY = Long.MAX_VALUE/4;
+    // what an int cell holds for INFINITY
+    private static final int INT_INFINITY = Integer.MAX_VALUE;
+    private static final int CHUNK_BITS = 27;
+    private static final int CHUNK_MASK = (1 << CHUNK_BITS) - 1;
+    private final int n;
+    private final boolean offHeap;
+    // exactly one of these holds the cells: ints while every finite distance fits in an int, else longs
+    private IntBuffer[] ints;
+    private LongBuffer[] longs;
+    /**
+     * a matrix of long cells, for distances of any length
+     * @param n the number of cities
+     * @param offHeap whether to keep the distances in direct buffers rather than on the heap
+     */
+    public DistanceMatrix(int n, boolean offHeap) {
+        this(n, offHeap, Long.MAX_VALUE);
+    }
+    /**
+     * @param n the number of cities
+     * @param offHeap whether to keep the distances in direct buffers rather than on the heap
+     * @param longestPath at least every finite distance the matrix will hold, such as the sum of all segment
+     * durations; below Integer.MAX_VALUE the cells are ints
+     */
+    public DistanceMatrix(int n, boolean offHeap, long longestPath) {
+        this.n=n;
+        this.offHeap=offHeap;
+        long cells=(long)n*(n+1)/2;
+        int chunkCount=Math.max((int)((cells+CHUNK_MASK) >>> CHUNK_BITS), 1);
+        if(longestPath<INT_INFINITY){
+            this.ints=new IntBuffer[chunkCount];
+            for(int c=0;c<chunkCount;c++){
+                int length=chunkLength(cells, c);
+                ints[c]=offHeap
+                        ? ByteBuffer.allocateDirect(4*length).order(ByteOrder.nativeOrder()).asIntBuffer()
+                        : IntBuffer.wrap(new int[length]);
+            }
+        }
+        else{
+            this.longs=longChunks(cells, chunkCount, offHeap);
+        }
+    }
+    // the sum of the segments' durations, which no shortest distance between the cities they join exceeds
+    public static long longestPath(List<? extends WeAreAllConnectedBase.SegmentBase> segments) {
+        long sum=0;
+        for(WeAreAllConnectedBase.SegmentBase sb:segments){
+            sum+=sb.duration;
+        }
+        return sum;
+    }
+    private static int chunkLength(long cells, int c) {
+        return (int)Math.min(cells-((long)c << CHUNK_BITS), 1 << CHUNK_BITS);
+    }
+    private static LongBuffer[] longChunks(long cells, int chunkCount, boolean offHeap) {
+        LongBuffer[] chunks=new LongBuffer[chunkCount];
+        for(int c=0;c<chunkCount;c++){
+            int length=chunkLength(cells, c);
+            chunks[c]=offHeap
+                    ? ByteBuffer.allocateDirect(8*length).order(ByteOrder.nativeOrder()).asLongBuffer()
+                    : LongBuffer.wrap(new long[length]);
+        }
+        return chunks;
+    }
+    public int size() {return this.n;}
+    // whether the cells are ints
+    public boolean narrow() {return this.ints!=null;}
+    /**
+     * switches to long cells, keeping every distance, if a path can now be longestPath long and that doesn't fit
+     * in an int.  Not safe to call while other threads read or write the matrix
+     */
+    public void widenTo(long longestPath) {
+        if(ints==null||longestPath<INT_INFINITY) return;
+        long cells=(long)n*(n+1)/2;
+        LongBuffer[] wide=longChunks(cells, ints.length, offHeap);
+        for(int c=0;c<ints.length;c++){
+            for(int k=0;k<ints[c].capacity();k++){
+                wide[c].put(k, toLong(ints[c].get(k)));
+            }
+        }
+        this.longs=wide;
+        this.ints=null;
+    }
+    public long get(int i, int j) {
+        long k=index(i, j);
+        if(ints!=null) return toLong(ints[(int)(k >>> CHUNK_BITS)].get((int)k & CHUNK_MASK));
+        return longs[(int)(k >>> CHUNK_BITS)].get((int)k & CHUNK_MASK);
+    }
+    // sets the distance both from i to j and from j to i
+    public void set(int i, int j, long distance) {
+        long k=index(i, j);
+        if(ints!=null) ints[(int)(k >>> CHUNK_BITS)].put((int)k & CHUNK_MASK, toInt(distance));
+        else longs[(int)(k >>> CHUNK_BITS)].put((int)k & CHUNK_MASK, distance);
+    }
+    /**
+     * copies row i of the triangle, the distances from i to i..n-1, into row[i..n-1], in bulk rather than cell by cell
+     * @param row at least n long, its entries below i are left alone
+     */
+    public void copyRow(int i, long[] row) {
+        copyRange(i, i, n, row, i);
+    }
+    // copies the distances from i to every city into row[0..n-1]; those below i are a column of the triangle
+    public void copyAllFrom(int i, long[] row) {
+        for(int j=0;j<i;j++){
+            row[j]=get(j, i);
+        }
+        copyRow(i, row);
+    }
+    /**
+     * copies the distances from i to from..to-1, all on or above the diagonal (i <= from), into into[offset..]
+     */
+    public void copyRange(int i, int from, int to, long[] into, int offset) {
+        long k=index(i, from);
+        while(from<to){
+            int c=(int)(k >>> CHUNK_BITS);
+            int position=(int)k & CHUNK_MASK;
+            int length;
+            if(ints!=null){
+                IntBuffer chunk=ints[c];
+                length=Math.min(to-from, chunk.capacity()-position);
+                for(int t=0;t<length;t++){
+                    into[offset+t]=toLong(chunk.get(position+t));
+                }
+            }
+            else{
+                LongBuffer chunk=longs[c].duplicate();
+                length=Math.min(to-from, chunk.capacity()-position);
+                chunk.position(position);
+                chunk.get(into, offset, length);
+            }
+            from+=length;
+            offset+=length;
+            k+=length;
+        }
+    }
+    // the reverse of copyRange: sets the distances from i to from..to-1 (i <= from) to distances[offset..]
+    public void setRange(int i, int from, int to, long[] distances, int offset) {
+        long k=index(i, from);
+        while(from<to){
+            int c=(int)(k >>> CHUNK_BITS);
+            int position=(int)k & CHUNK_MASK;
+            int length;
+            if(ints!=null){
+                IntBuffer chunk=ints[c];
+                length=Math.min(to-from, chunk.capacity()-position);
+                for(int t=0;t<length;t++){
+                    chunk.put(position+t, toInt(distances[offset+t]));
+                }
+            }
+            else{
+                LongBuffer chunk=longs[c].duplicate();
+                length=Math.min(to-from, chunk.capacity()-position);
+                chunk.position(position);
+                chunk.put(distances, offset, length);
+            }
+            from+=length;
+            offset+=length;
+            k+=length;
+        }
+    }
+    public void fill(long distance) {
+        if(ints!=null){
+            int cell=toInt(distance);
+            for(IntBuffer chunk:ints){
+                for(int k=0;k<chunk.capacity();k++){
+                    chunk.put(k, cell);
+                }
+            }
+            return;
+        }
+        for(LongBuffer chunk:longs){
+            for(int k=0;k<chunk.capacity();k++){
+                chunk.put(k, distance);
+            }
+        }
+    }
+    private static long toLong(int cell) {
+        return cell==INT_INFINITY?INFINITY:cell;
+    }
+    // anything from INFINITY up is a path through a missing leg, which an int cell keeps as no path
+    private static int toInt(long distance) {
+        if(distance>=INT_INFINITY){
+            if(distance>=INFINITY) return INT_INFINITY;
+            throw new IllegalStateException("distance "+distance+" doesn't fit an int cell, widenTo wasn't called");
+        }
+        return (int)distance;
+    }
+    // row i of the triangle holds j = i..n-1 and starts after the n + (n-1) + ... + (n-i+1) cells of the rows above
+    private long index(int i, int j) {
+        if(i>j){
+            int swap=i;
+            i=j;
+            j=swap;
+        }
+        return (long)i*n-(long)i*(i-1)/2+(j-i);
+    }
+}
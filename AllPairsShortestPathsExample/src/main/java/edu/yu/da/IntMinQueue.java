@@ -0,0 +1,16 @@
+package edu.yu.da;
+
+/** A min priority queue of the ints 0..n-1 keyed by long, with decrease-key,
+ * as Dijkstra needs it.  Keys are primitive longs throughout, since distances
+ * can outgrow an int, so nothing is boxed and no comparisons go through
+ * compareTo.
+ */
+interface IntMinQueue {
+    boolean isEmpty();
+    boolean contains(int v);
+    void insert(int v, long key);
+    // lowers the key of v, which must be queued, to key
+    void decreaseKey(int v, long key);
+    // removes and returns a v of least key
+    int delMin();
+}
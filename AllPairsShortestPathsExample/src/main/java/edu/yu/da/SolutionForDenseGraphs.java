@@ -1,106 +1,207 @@
-package edu.yu.da;
-
-import java.util.List;
-
-public class SolutionForDenseGraphs extends WeAreAllConnectedBase{
-    private double[][] distances;
-    private WeAreAllConnectedBase.SegmentBase currentSolution;
-    private int currentSolutionLowersBy=Integer.MIN_VALUE;
-    private int n;
-    public SolutionForDenseGraphs(){
-        super();
-    }
-    @Override
-    public WeAreAllConnectedBase.SegmentBase findBest(int n, List<SegmentBase> current, List<WeAreAllConnectedBase.SegmentBase> possibilities) {
-        this.distances = new double[n][n];
-        this.n = n;
-        for(int i=0;i<n;i++){
-            for(int j=0;j<n;j++){
-                if(i==j) distances[i][j]=0;
-                else distances[i][j]=Double.POSITIVE_INFINITY;
-            }
-        }
-        System.out.println("after initialized with infinities, printing out distances");
-        this.printDistances();
-        for (WeAreAllConnectedBase.SegmentBase sb : current) {
-            System.out.println("\nadding the following edge to graph");
-            System.out.println("v1: "+sb.x+" v2: "+sb.y+" with length: "+sb.duration);
-            System.out.println("changing distances["+sb.x+"]["+sb.y+"] from: "+distances[sb.x][sb.y]+" to "+sb.duration);
-            distances[sb.x][sb.y] = sb.duration;
-            System.out.println("changing distances["+sb.y+"]["+sb.x+"] from: "+distances[sb.y][sb.x]+" to "+sb.duration);
-            distances[sb.y][sb.x] = sb.duration;
-            this.printDistances();
-        }
-        System.out.println("\n\n after adding orig edges, printing");
-        this.printDistances();
-        this.preProcessDistances();
-        for (WeAreAllConnectedBase.SegmentBase sb : possibilities) {
-            this.checkPossibility(sb);
-        }
-        return this.currentSolution;
-    }
-    private void preProcessDistances(){
-        System.out.println("\n\n preprocessing shortest distances");
-        for(int k=0;k<n;k++){
-            System.out.println("\n k = "+k);
-            for(int i=0;i<n;i++){
-                for(int j=0;j<n;j++){
-                    if (distances[i][k]+distances[k][j]<distances[i][j])
-                        distances[i][j]=distances[i][k]+distances[k][j];
-                }
-            }
-            System.out.println("after calculating for k, shortest paths direct or stopping at 0->k is: ");
-            this.printDistances();
-        }
-        this.printDistances();
-    }
-    private void printDistances(){
-        System.out.println("printing distances");
-        for(int i=0;i<n;i++){
-            for(int j=0;j<n;j++){
-                System.out.print(distances[i][j]+" ");
-            }
-            System.out.println();
-        }
-    }
-    private void checkPossibility(WeAreAllConnectedBase.SegmentBase sb){
-        int myTotalShortened=0;
-        int[][]copy=new int[n][n];
-        for(int i=0;i<n;i++){
-            for(int j=0;j<n;j++){
-                copy[i][j]= (int) distances[i][j];
-            }
-        }
-        int v1=sb.x;
-        int v2=sb.y;
-        int length=sb.duration;
-        for(int i=0;i<this.n;i++){
-            for(int j=i;j<n;j++){
-                double currentDistance=distances[i][j];
-                if(distances[i][v1]+distances[v2][j]+length<currentDistance){
-                    myTotalShortened+=currentDistance-(distances[i][v1]+distances[v2][j]+length);
-                    currentDistance=distances[i][v1]+distances[v2][j]+length;
-                    copy[i][j]= (int) (distances[i][v1]+distances[v2][j]+length);
-                }
-                if(distances[i][v2]+distances[v1][j]+length<currentDistance){
-                    myTotalShortened+=currentDistance-(distances[i][v2]+distances[v1][j]+length);
-                    copy[i][j]= (int) (distances[i][v2]+distances[v1][j]+length);
-                }
-            }
-        }
-        System.out.println("\n printing new copy after adding edge");
-        for(int i=0;i<n;i++){
-            for(int j=0;j<n;j++){
-                System.out.print(copy[i][j]+" ");
-            }
-            System.out.println();
-        }
-        if(myTotalShortened>this.currentSolutionLowersBy){
-            this.currentSolutionLowersBy=myTotalShortened;
-            this.currentSolution=sb;
-        }
-        System.out.println("checked possibility from: "+sb.x+" to: "+sb.y+" with length: "+sb.duration);
-        System.out.println("total shortened by was: "+myTotalShortened);
-    }
-
-}
+package edu.yu.da;
+
+import java.io.PrintStream;
+import java.util.List;
+
+public class SolutionForDenseGraphs extends WeAreAllConnectedBase{
+    /**
+     * follows findBest as it works, see setTracer
+     */
+    public interface Tracer{
+        /**
+         * @return whether findBest should hand over the whole matrix at every step.  That is O(n^2) per edge, per
+         * intermediate city and per candidate, and needs the plain Floyd-Warshall rather than the blocked one
+         */
+        boolean snapshots();
+        // a step of findBest
+        void message(String message);
+        // the n*n matrix at the step named, only called if snapshots()
+        void matrix(String name, int n, MatrixEntries entries);
+        // how long a phase of findBest took
+        void phase(String phase, long nanos);
+    }
+    public interface MatrixEntries{
+        double get(int i, int j);
+    }
+    /**
+     * writes everything it is told to a PrintStream, which can be System.out or a file.  With snapshots, on
+     * System.out, it prints what findBest used to print
+     */
+    public static class PrintStreamTracer implements Tracer{
+        private final PrintStream out;
+        private final boolean snapshots;
+        public PrintStreamTracer(PrintStream out, boolean snapshots){
+            this.out=out;
+            this.snapshots=snapshots;
+        }
+        public boolean snapshots(){return this.snapshots;}
+        public void message(String message){
+            out.println(message);
+        }
+        public void matrix(String name, int n, MatrixEntries entries){
+            out.println(name);
+            StringBuilder row=new StringBuilder();
+            for(int i=0;i<n;i++){
+                row.setLength(0);
+                for(int j=0;j<n;j++){
+                    row.append(entries.get(i,j)).append(' ');
+                }
+                out.println(row);
+            }
+        }
+        public void phase(String phase, long nanos){
+            out.println(phase+" took "+nanos/1_000_000.0+" ms");
+        }
+    }
+    private DistanceMatrix distances;
+    private boolean offHeapDistances=false;
+    private WeAreAllConnectedBase.SegmentBase currentSolution;
+    private int currentSolutionLowersBy=Integer.MIN_VALUE;
+    private int n;
+    private Tracer tracer=null;     // every use is behind a null check, so with no tracer nothing is even formatted
+    private int parallelism=Runtime.getRuntime().availableProcessors();
+    public SolutionForDenseGraphs(){
+        super();
+    }
+    /**
+     * keeps the all pairs distances of later findBest calls outside the Java heap, for cities whose distance
+     * matrix doesn't fit in it
+     * @param offHeap whether to store the distances off heap, defaults to false
+     */
+    public void setOffHeapDistances(boolean offHeap){
+        this.offHeapDistances=offHeap;
+    }
+    /**
+     * has later findBest calls report their steps, phase timings and, if the tracer asks for them, matrix
+     * snapshots.  Unless snapshots are asked for, the distances are computed by a blocked Floyd-Warshall on
+     * setParallelism threads, which works on the stored distances themselves and needs no n*n matrix
+     * @param tracer where to report, or null (the default) to trace nothing
+     */
+    public void setTracer(Tracer tracer){
+        this.tracer=tracer;
+    }
+    /**
+     * @param threads the number of threads the blocked Floyd-Warshall runs on, must be at least 1, defaults to the
+     * number of available processors
+     */
+    public void setParallelism(int threads){
+        if(threads<1) throw new IllegalArgumentException("threads must be at least 1");
+        this.parallelism=threads;
+    }
+    @Override
+    public WeAreAllConnectedBase.SegmentBase findBest(int n, List<SegmentBase> current, List<WeAreAllConnectedBase.SegmentBase> possibilities) {
+        long start=this.tracer==null?0:System.nanoTime();
+        boolean snapshots=this.tracer!=null&&this.tracer.snapshots();
+        this.distances = new DistanceMatrix(n,this.offHeapDistances,DistanceMatrix.longestPath(current));
+        this.n = n;
+        distances.fill(DistanceMatrix.INFINITY);
+        for(int i=0;i<n;i++){
+            distances.set(i,i,0);
+        }
+        if(snapshots){
+            tracer.message("after initialized with infinities, printing out distances");
+            this.traceDistances();
+        }
+        for (WeAreAllConnectedBase.SegmentBase sb : current) {
+            if(tracer!=null){
+                tracer.message("\nadding the following edge to graph");
+                tracer.message("v1: "+sb.x+" v2: "+sb.y+" with length: "+sb.duration);
+                tracer.message("changing distances["+sb.x+"]["+sb.y+"] from: "+distance(sb.x,sb.y)+" to "+sb.duration);
+                tracer.message("changing distances["+sb.y+"]["+sb.x+"] from: "+distance(sb.y,sb.x)+" to "+sb.duration);
+            }
+            distances.set(sb.x,sb.y,sb.duration);
+            if(snapshots) this.traceDistances();
+        }
+        if(snapshots){
+            tracer.message("\n\n after adding orig edges, printing");
+            this.traceDistances();
+        }
+        long built=this.tracer==null?0:System.nanoTime();
+        if(tracer!=null) tracer.phase("adding edges",built-start);
+        if(snapshots) this.preProcessDistances();
+        else this.computeDistances();
+        long computed=this.tracer==null?0:System.nanoTime();
+        if(tracer!=null) tracer.phase("all pairs distances",computed-built);
+        for (WeAreAllConnectedBase.SegmentBase sb : possibilities) {
+            this.checkPossibility(sb,snapshots);
+        }
+        if(tracer!=null) tracer.phase("checking possibilities",System.nanoTime()-computed);
+        return this.currentSolution;
+    }
+    // the plain Floyd-Warshall, so the tracer can see the distances after every intermediate city
+    private void preProcessDistances(){
+        tracer.message("\n\n preprocessing shortest distances");
+        for(int k=0;k<n;k++){
+            tracer.message("\n k = "+k);
+            for(int i=0;i<n;i++){
+                long ik=distances.get(i,k);
+                if(ik==DistanceMatrix.INFINITY) continue;
+                // distances are symmetric, so only j >= i is stored and needs updating
+                for(int j=i;j<n;j++){
+                    // a way through a missing leg is at least INFINITY, so it never wins
+                    long kj=distances.get(k,j);
+                    if (ik+kj<distances.get(i,j))
+                        distances.set(i,j,ik+kj);
+                }
+            }
+            tracer.message("after calculating for k, shortest paths direct or stopping at 0->k is: ");
+            this.traceDistances();
+        }
+        this.traceDistances();
+    }
+    private void computeDistances(){
+        new BlockedFloydWarshall(distances).run(this.parallelism);
+    }
+    private void traceDistances(){
+        tracer.matrix("printing distances",n,this::distance);
+    }
+    // the distance from i to j, with no path between them as infinity
+    private double distance(int i,int j){
+        long d=distances.get(i,j);
+        return d==DistanceMatrix.INFINITY?Double.POSITIVE_INFINITY:d;
+    }
+    // snapshots: whether to build the matrix of distances with the candidate added, for the tracer
+    private void checkPossibility(WeAreAllConnectedBase.SegmentBase sb,boolean snapshots){
+        int myTotalShortened=0;
+        int[][]copy=null;
+        if(snapshots){
+            copy=new int[n][n];
+            for(int i=0;i<n;i++){
+                for(int j=0;j<n;j++){
+                    copy[i][j]= (int) distance(i,j);
+                }
+            }
+        }
+        int v1=sb.x;
+        int v2=sb.y;
+        int length=sb.duration;
+        for(int i=0;i<this.n;i++){
+            for(int j=i;j<n;j++){
+                double currentDistance=distance(i,j);
+                if(distance(i,v1)+distance(v2,j)+length<currentDistance){
+                    myTotalShortened+=currentDistance-(distance(i,v1)+distance(v2,j)+length);
+                    currentDistance=distance(i,v1)+distance(v2,j)+length;
+                    if(snapshots) copy[i][j]= (int) (distance(i,v1)+distance(v2,j)+length);
+                }
+                if(distance(i,v2)+distance(v1,j)+length<currentDistance){
+                    myTotalShortened+=currentDistance-(distance(i,v2)+distance(v1,j)+length);
+                    if(snapshots) copy[i][j]= (int) (distance(i,v2)+distance(v1,j)+length);
+                }
+            }
+        }
+        if(myTotalShortened>this.currentSolutionLowersBy){
+            this.currentSolutionLowersBy=myTotalShortened;
+            this.currentSolution=sb;
+        }
+        if(tracer==null) return;
+        if(snapshots){
+            int[][] withCandidate=copy;
+            // in the same form as the distances, the copy's unreachable pairs having been cast to Integer.MAX_VALUE
+            tracer.matrix("\n printing new copy after adding edge",n,
+                    (i,j)->withCandidate[i][j]==Integer.MAX_VALUE?Double.POSITIVE_INFINITY:withCandidate[i][j]);
+        }
+        tracer.message("checked possibility from: "+sb.x+" to: "+sb.y+" with length: "+sb.duration);
+        tracer.message("total shortened by was: "+myTotalShortened);
+    }
+
+}
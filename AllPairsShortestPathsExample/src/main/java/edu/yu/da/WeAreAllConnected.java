@@ -1,96 +1,12 @@
 package edu.yu.da;
 import java.lang.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class WeAreAllConnected extends WeAreAllConnectedBase{
-    public class IndexMinPQ<Key extends Comparable<Key>>{ //source: https://algs4.cs.princeton.edu/24pq/IndexMinPQ.java.html
-        private int maxN;
-        private int n;
-        private int[]pq;
-        private int[] qp;
-        private Key[] keys;
-
-        public IndexMinPQ(int maxN){
-            if(maxN<0) throw new IllegalArgumentException();
-            this.maxN=maxN;
-            n=0;
-            keys=(Key[])new Comparable[maxN+1];
-            pq=new int[maxN+1];
-            qp=new int[maxN+1];
-            for(int i=0;i<=maxN;i++){
-                qp[i]=-1;
-            }
-        }
-        public boolean isEmpty(){
-            return n==0;
-        }
-        public boolean contains(int i){
-            validateIndex(i);
-            return qp[i]!=-1;
-        }
-        public int size(){
-            return n;
-        }
-        public void insert(int i, Key key){
-            validateIndex(i);
-            if(contains(i)) throw new IllegalArgumentException("index is already in the priority queue");
-            n++;
-            qp[i]=n;
-            pq[n]=i;
-            keys[i]=key;
-            swim(n);
-        }
-        public int delMin(){
-            if(n==0) throw new NoSuchElementException("priority queue underflow");
-            int min=pq[1];
-            exch(1,n--);
-            sink(1);
-            assert min==pq[n+1];
-            qp[min]=-1;
-            keys[min]=null;
-            pq[n+1]=-1;
-            return min;
-        }
-        public void changeKey(int i,Key key){
-            validateIndex(i);
-            if(!contains(i)) throw new NoSuchElementException("index is not in priority queue");
-            keys[i]=key;
-            swim(qp[i]);
-            sink(qp[i]);
-        }
-        private void validateIndex(int i){
-            if(i<0) throw new IllegalArgumentException("index is negative: "+i);
-            if(i>=maxN) throw new IllegalArgumentException("index >= capacity: "+i);
-        }
-        private boolean greater(int i,int j){
-            if(pq[i]<0||pq[j]<0) return false;
-            return keys[pq[i]].compareTo(keys[pq[j]])>0;
-        }
-        private void exch(int i, int j){
-            int swap=pq[i];
-            pq[i]=pq[j];
-            pq[j]=swap;
-            qp[pq[i]]=j;
-            qp[pq[j]]=i;
-        }
-        private void swim(int k){
-            while(k>1 && greater(k/2,k)){
-                exch(k,k/2);
-                k=k/2;
-            }
-        }
-        private void sink(int k){
-            while(2*k<=n){
-                int j=2*k;
-                if(j<n &&greater(j,j+1)) j++;
-                if(!greater(k,j)) break;
-                exch(k,j);
-                k=j;
-            }
-        }
-    }
     public static class Segment extends SegmentBase{
         public final int x,y,duration;
         /**
@@ -127,6 +43,26 @@ public class WeAreAllConnected extends WeAreAllConnectedBase{
             return myX.hashCode()+myY.hashCode()+myDuration.hashCode();
         }
     }
+    /**
+     * a candidate segment and by how much adding it would lower the total duration.  While some cities can't reach
+     * each other the total duration is infinite, so there are two parts, and the pairs connected come first
+     */
+    public static class RankedSegment{
+        private final SegmentBase segment;
+        private final long pairsConnected;
+        private final long improvement;
+        public RankedSegment(SegmentBase segment, long pairsConnected, long improvement){
+            this.segment=segment;
+            this.pairsConnected=pairsConnected;
+            this.improvement=improvement;
+        }
+        public SegmentBase getSegment(){return this.segment;}
+        // how many pairs of cities that couldn't reach each other the segment connects, 0 if all of them already could
+        public long getPairsConnected(){return this.pairsConnected;}
+        // by how much the segment lowers the sum of the distances between the pairs that are connected, which counts
+        // the distances of any pairs it connects against it
+        public long getImprovement(){return this.improvement;}
+    }
     class Edge{
         private int v;
         private int w;
@@ -160,89 +96,224 @@ public class WeAreAllConnected extends WeAreAllConnectedBase{
             this.adj[v].add(e);
             this.adj[w].add(e);
         }
-        public Iterable<Edge> adj(int v){return this.adj[v];}
+        public List<Edge> adj(int v){return this.adj[v];}
     }
-    private int[][] distances;
+    /**
+     * the distTo and pq a single source Dijkstra needs, so that every thread of a parallel preProcessDistances can
+     * have its own, and reuse it for every source it is handed without allocating anything more.  Only distances
+     * are needed, not paths, so no edgeTo is kept
+     */
+    class DijkstraWorkspace{
+        private final long[] distTo;
+        private final IntMinQueue pq;
+        // the cities this source has reached, which are the only ones whose distTo isn't INFINITY
+        private final int[] touched;
+        private int touchedCount=0;
+        public DijkstraWorkspace(int n){
+            this.distTo=new long[n];
+            this.pq=maxWeight<=BUCKET_QUEUE_MAX_WEIGHT?new BucketMinQueue(n,maxWeight):new IndexMinIntHeap(n);
+            this.touched=new int[n];
+            Arrays.fill(distTo,DistanceMatrix.INFINITY);
+        }
+        // every delMin empties pq again and distTo is put back as it was through touched, so a source costs
+        // O(cities reached) on top of its Dijkstra rather than O(n)
+        public void calculateShortestDistances(int source){
+            reach(source,0);
+            pq.insert(source,0);
+            while(!pq.isEmpty()){
+                relax(g,pq.delMin());
+            }
+            //now use distTo to add shortest distances to the matrix, the ones to earlier sources are already there
+            //and the cities not reached are left at the INFINITY findBest filled it with
+            //each source writes only its own row, so threads never write the same cell
+            for(int t=0;t<touchedCount;t++){
+                int i=touched[t];
+                if(i>=source) distances.set(source,i,distTo[i]);
+                distTo[i]=DistanceMatrix.INFINITY;
+            }
+            touchedCount=0;
+        }
+        private void relax(WeightedUndirectedGraph g,int v){
+            List<Edge> adj=g.adj(v);
+            // indexed rather than for each, so there's no iterator to allocate
+            for(int k=0;k<adj.size();k++){
+                Edge e=adj.get(k);
+                int w=e.other(v);
+                long distance=distTo[v]+e.getWeight();
+                if(distance<distTo[w]){
+                    reach(w,distance);
+                    if(pq.contains(w)) pq.decreaseKey(w,distTo[w]);
+                    else pq.insert(w,distTo[w]);
+                }
+            }
+        }
+        private void reach(int w,long distance){
+            if(distTo[w]==DistanceMatrix.INFINITY) touched[touchedCount++]=w;
+            distTo[w]=distance;
+        }
+    }
+    private DistanceMatrix distances;
+    private boolean offHeapDistances=false;
+    // the sum of the segment durations, which no shortest distance exceeds
+    private long totalDuration;
     public WeightedUndirectedGraph g;
-    private SegmentBase currentSolution;
-    private int currentSolutionLowersBy=Integer.MIN_VALUE;
     private int n;
-    private Edge[] edgeTo;
-    private int[] distTo;
-    private IndexMinPQ<Integer> pq;
+    private int parallelism=1;
+    // with weights this small the Dijkstras queue cities in buckets rather than a heap
+    private static final int BUCKET_QUEUE_MAX_WEIGHT=255;
+    private int maxWeight;
     public WeAreAllConnected(){
         super();
     }
+    /**
+     * keeps the all pairs distances of later findBest calls outside the Java heap, for cities whose distance
+     * matrix doesn't fit in it
+     * @param offHeap whether to store the distances off heap, defaults to false
+     */
+    public void setOffHeapDistances(boolean offHeap){
+        this.offHeapDistances=offHeap;
+    }
+    /**
+     * runs the n single source Dijkstras of later findBest calls on this many threads, each with its own workspace
+     * @param threads must be at least 1, defaults to 1 (sequential)
+     */
+    public void setParallelism(int threads){
+        if(threads<1) throw new IllegalArgumentException("threads must be at least 1");
+        this.parallelism=threads;
+    }
+    /**
+     * keeps the all pairs distances of a communication system across rounds of greedy planning.  Committing a segment
+     * updates the distances in O(n^2), where findBest would compute them all again from the segments
+     */
+    public class Session{
+        private final DistanceMatrix distances;
+        private final int n;
+        private long totalDuration;
+        private Session(int n, List<SegmentBase> current){
+            preProcessDistances(n,current);
+            this.distances=WeAreAllConnected.this.distances;
+            this.totalDuration=WeAreAllConnected.this.totalDuration;
+            this.n=n;
+        }
+        /**
+         * @param possibilities the segments to choose between, none of which is committed
+         * @return the first of the possibilities that lowers the total duration the most, or null if there are none
+         */
+        public SegmentBase findBest(List<SegmentBase> possibilities){
+            return best(this.distances,possibilities);
+        }
+        /**
+         * @param possibilities the segments to rank, none of which is committed
+         * @param k how many to return, must be at least 1
+         * @return the (at most) k possibilities that lower the total duration the most, best first
+         */
+        public List<RankedSegment> rank(List<SegmentBase> possibilities, int k){
+            return WeAreAllConnected.this.rank(this.distances,possibilities,k);
+        }
+        /**
+         * adds a segment to the communication system.  A path that uses the new segment goes from i to one of its ends,
+         * across it and on from the other end to j, so every distance becomes the shortest of itself and the two ways
+         * of going through the segment
+         */
+        public void commit(SegmentBase sb){
+            if(sb.x<0||sb.x>=n||sb.y<0||sb.y>=n) throw new IllegalArgumentException("segment ends must be cities 0..n-1");
+            if(sb.duration<0) throw new IllegalArgumentException("duration must be non-negative");
+            // a path through the new segment can be longer than any before it
+            totalDuration+=sb.duration;
+            distances.widenTo(totalDuration);
+            // the distances from the ends as they were, since the ends' own rows change along the way
+            long[] fromX=new long[n];
+            long[] fromY=new long[n];
+            long[] row=new long[n];
+            distances.copyAllFrom(sb.x,fromX);
+            distances.copyAllFrom(sb.y,fromY);
+            for(int i=0;i<n;i++){
+                // i can't reach the segment, so none of its pairs change
+                if(fromX[i]==DistanceMatrix.INFINITY&&fromY[i]==DistanceMatrix.INFINITY) continue;
+                long viaX=fromX[i]+sb.duration;
+                long viaY=fromY[i]+sb.duration;
+                distances.copyRow(i,row);
+                for(int j=i;j<n;j++){
+                    // a way through a missing leg is at least INFINITY, so it never wins
+                    long shortest=Math.min(row[j],Math.min(viaX+fromY[j],viaY+fromX[j]));
+                    if(shortest<row[j]) distances.set(i,j,shortest);
+                }
+            }
+        }
+        // the distance from i to j, DistanceMatrix.INFINITY if there is no path between them
+        public long distance(int i, int j){
+            return distances.get(i,j);
+        }
+    }
+    /**
+     * starts greedy planning from the given communication system, computing its all pairs distances once
+     * @param n the ids of all cities lie in the range 0..n-1
+     * @param current the current communication system's segments, which the client keeps ownership of
+     */
+    public Session openSession(int n, List<SegmentBase> current){
+        return new Session(n,current);
+    }
     @Override
     public SegmentBase findBest(int n, List<SegmentBase> current, List<SegmentBase> possibilities) {
-        this.distances = new int[n][n];
-        this.edgeTo=new Edge[n];
-        this.distTo=new int[n];
+        this.preProcessDistances(n,current);
+        return this.best(this.distances,possibilities);
+    }
+    // the first of the possibilities that scores highest, or null if there are none
+    private SegmentBase best(DistanceMatrix distances, List<SegmentBase> possibilities){
+        CandidateScorer.Scores scores=new CandidateScorer(distances).score(possibilities,this.parallelism);
+        int best=-1;
+        for(int c=0;c<possibilities.size();c++){
+            if(best==-1||scores.compare(c,best)>0) best=c;
+        }
+        return best==-1?null:possibilities.get(best);
+    }
+    /**
+     * ranks the possibilities as findBest would choose between them, without computing the scores of those that
+     * can't make the top k where it can tell
+     * @param k how many to return, must be at least 1
+     * @return the (at most) k possibilities that lower the total duration the most, best first, those that lower it
+     * equally in the order of possibilities
+     */
+    public List<RankedSegment> rank(int n, List<SegmentBase> current, List<SegmentBase> possibilities, int k){
+        this.preProcessDistances(n,current);
+        return this.rank(this.distances,possibilities,k);
+    }
+    private List<RankedSegment> rank(DistanceMatrix distances, List<SegmentBase> possibilities, int k){
+        if(k<1) throw new IllegalArgumentException("k must be at least 1");
+        CandidateScorer.Ranking ranking=new CandidateScorer(distances).rank(possibilities,k,this.parallelism);
+        List<RankedSegment> ranked=new ArrayList<>(ranking.indices.length);
+        for(int r=0;r<ranking.indices.length;r++){
+            int c=ranking.indices[r];
+            ranked.add(new RankedSegment(possibilities.get(c),ranking.scores.joined[c],ranking.scores.gain[c]));
+        }
+        return ranked;
+    }
+    private void preProcessDistances(int n, List<SegmentBase> current){
+        this.totalDuration=DistanceMatrix.longestPath(current);
+        this.distances = new DistanceMatrix(n,this.offHeapDistances,this.totalDuration);
+        distances.fill(DistanceMatrix.INFINITY);
         this.g=new WeightedUndirectedGraph(n);
         this.n = n;
+        this.maxWeight=0;
         for (SegmentBase sb : current) {
             Edge e=new Edge(sb.x,sb.y,sb.duration);
             g.addEdge(e);
+            this.maxWeight=Math.max(this.maxWeight,sb.duration);
         }
-        this.preProcessDistances();
-        for (SegmentBase sb : possibilities) {
-            this.checkPossibility(sb);
-        }
-        return this.currentSolution;
-    }
-    private void preProcessDistances(){
-        for(int i=0;i<n;i++){
-            calculateShortestDistances(i);
-        }
-    }
-    private void calculateShortestDistances(int source){
-        this.distTo=new int[this.n];
-        this.edgeTo=new Edge[n];
-        this.pq=new IndexMinPQ<>(n);
-        for(int v=0;v<this.n;v++){
-            distTo[v]=Integer.MAX_VALUE;
-        }
-        distTo[source]=0;
-        pq.insert(source,0);
-        while(!pq.isEmpty()){
-            relax(this.g,pq.delMin());
-        }
-        //now use distTo to add shortest distances to the matrix
-        for(int i=0;i<n;i++){
-            distances[source][i]=distTo[i];
-        }
-    }
-    private void relax(WeightedUndirectedGraph g,int v){
-        for(Edge e:g.adj(v)){
-            int w=e.other(v);
-            if(distTo[w]>distTo[v]+e.getWeight()){
-                distTo[w]=distTo[v]+e.getWeight();
-                edgeTo[w]=e;
-                if(pq.contains(w)) pq.changeKey(w,distTo[w]);
-                else pq.insert(w,distTo[w]);
+        if(this.parallelism==1){
+            DijkstraWorkspace workspace=new DijkstraWorkspace(n);
+            for(int i=0;i<n;i++){
+                workspace.calculateShortestDistances(i);
             }
+            return;
         }
-    }
-    private void checkPossibility(SegmentBase sb){
-        int myTotalShortened=0;
-        int v1=sb.x;
-        int v2=sb.y;
-        int length=sb.duration;
-        for(int i=0;i<this.n;i++){
-            for(int j=i;j<n;j++){
-                double currentDistance=distances[i][j];
-                if(distances[i][v1]+distances[v2][j]+length<currentDistance){
-                    myTotalShortened+=currentDistance-(distances[i][v1]+distances[v2][j]+length);
-                    currentDistance=distances[i][v1]+distances[v2][j]+length;
-                }
-                if(distances[i][v2]+distances[v1][j]+length<currentDistance){
-                    myTotalShortened+=currentDistance-(distances[i][v2]+distances[v1][j]+length);
-                }
-            }
+        ThreadLocal<DijkstraWorkspace> workspace=ThreadLocal.withInitial(()->new DijkstraWorkspace(n));
+        ForkJoinPool pool=new ForkJoinPool(this.parallelism);
+        try{
+            pool.submit(()->IntStream.range(0,n).parallel().forEach(i->workspace.get().calculateShortestDistances(i))).join();
         }
-        if(myTotalShortened>this.currentSolutionLowersBy){
-            this.currentSolutionLowersBy=myTotalShortened;
-            this.currentSolution=sb;
+        finally{
+            pool.shutdown();
         }
     }
 }
@@ -0,0 +1,51 @@
+package edu.yu.da;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class BlockedFloydWarshallTest {
+    @Test
+    public void matchesThePlainTripleLoopAcrossTileBoundaries(){
+        for(int n:new int[]{1,2,63,64,65,130,200}){
+            for(int threads=1;threads<=3;threads+=2){
+                for(boolean narrow:new boolean[]{false,true}){
+                    Random random=new Random(n*31+threads);
+                    // int cells take durations short enough that n of them add up to less than an int
+                    int longest=narrow?1<<20:1<<30;
+                    DistanceMatrix distances=narrow?new DistanceMatrix(n,threads==3,(long)n*longest):new DistanceMatrix(n,threads==3);
+                    assertEquals(narrow,distances.narrow());
+                    long[][] expected=new long[n][n];
+                    distances.fill(DistanceMatrix.INFINITY);
+                    for(long[] row:expected) Arrays.fill(row,DistanceMatrix.INFINITY);
+                    for(int i=0;i<n;i++){
+                        distances.set(i,i,0);
+                        expected[i][i]=0;
+                    }
+                    // sparse enough that some cities can't reach each other, long enough that paths of long cells pass 2^31
+                    for(int e=0;e<n;e++){
+                        int x=random.nextInt(n), y=random.nextInt(n);
+                        long duration=random.nextInt(longest);
+                        if(x==y||duration>=expected[x][y]) continue;
+                        distances.set(x,y,duration);
+                        expected[x][y]=duration;
+                        expected[y][x]=duration;
+                    }
+                    for(int k=0;k<n;k++)
+                        for(int i=0;i<n;i++)
+                            for(int j=0;j<n;j++)
+                                if(expected[i][k]!=DistanceMatrix.INFINITY&&expected[k][j]!=DistanceMatrix.INFINITY
+                                        &&expected[i][k]+expected[k][j]<expected[i][j])
+                                    expected[i][j]=expected[i][k]+expected[k][j];
+                    new BlockedFloydWarshall(distances).run(threads);
+                    for(int i=0;i<n;i++)
+                        for(int j=0;j<n;j++)
+                            assertEquals(expected[i][j],distances.get(i,j),"n="+n+" threads="+threads+" narrow="+narrow+" ("+i+","+j+")");
+                }
+            }
+        }
+    }
+}
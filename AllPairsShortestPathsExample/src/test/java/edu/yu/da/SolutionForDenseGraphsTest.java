@@ -0,0 +1,97 @@
+package edu.yu.da;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class SolutionForDenseGraphsTest {
+    // durations up to 2^30, so shortest paths run well past Integer.MAX_VALUE
+    private static final int LONGEST_DURATION=1<<30;
+
+    @Test
+    public void findBestMatchesTheDoubleFloydWarshallOnLongPaths(){
+        for(int trial=0;trial<600;trial++){
+            Random random=new Random(trial);
+            int n=2+random.nextInt(40);
+            List<WeAreAllConnectedBase.SegmentBase> current=new ArrayList<>();
+            List<WeAreAllConnectedBase.SegmentBase> possibilities=new ArrayList<>();
+            for(int i=1;i<n;i++){
+                // every other trial leaves some cities unreachable
+                if(trial%2==0||random.nextBoolean()){
+                    current.add(new WeAreAllConnected.Segment(random.nextInt(i),i,random.nextInt(LONGEST_DURATION)));
+                }
+            }
+            for(int c=1+random.nextInt(30);c>0;c--){
+                int x=random.nextInt(n), y=random.nextInt(n);
+                if(x!=y) possibilities.add(new WeAreAllConnected.Segment(x,y,random.nextInt(LONGEST_DURATION)));
+            }
+            if(possibilities.isEmpty()) continue;
+            assertSame(expectedBest(n,current,possibilities),
+                    new SolutionForDenseGraphs().findBest(n,current,possibilities),"trial "+trial);
+        }
+    }
+
+    @Test
+    public void findBestIsTheSameOnAnyNumberOfThreads(){
+        Random random=new Random(7);
+        int n=300;
+        List<WeAreAllConnectedBase.SegmentBase> current=new ArrayList<>();
+        List<WeAreAllConnectedBase.SegmentBase> possibilities=new ArrayList<>();
+        for(int i=1;i<n;i++){
+            current.add(new WeAreAllConnected.Segment(random.nextInt(i),i,random.nextInt(LONGEST_DURATION)));
+        }
+        for(int c=0;c<50;c++){
+            possibilities.add(new WeAreAllConnected.Segment(random.nextInt(n/2),n/2+random.nextInt(n/2),
+                    random.nextInt(LONGEST_DURATION)));
+        }
+        WeAreAllConnectedBase.SegmentBase expected=expectedBest(n,current,possibilities);
+        for(int threads=1;threads<=4;threads++){
+            SolutionForDenseGraphs solution=new SolutionForDenseGraphs();
+            solution.setParallelism(threads);
+            assertSame(expected,solution.findBest(n,current,possibilities),threads+" threads");
+        }
+    }
+
+    // the original all double findBest, with the same int running total
+    private static WeAreAllConnectedBase.SegmentBase expectedBest(int n, List<WeAreAllConnectedBase.SegmentBase> current,
+                                                                 List<WeAreAllConnectedBase.SegmentBase> possibilities){
+        double[][] d=new double[n][n];
+        for(double[] row:d) Arrays.fill(row,Double.POSITIVE_INFINITY);
+        for(int i=0;i<n;i++) d[i][i]=0;
+        for(WeAreAllConnectedBase.SegmentBase sb:current){
+            d[sb.x][sb.y]=sb.duration;
+            d[sb.y][sb.x]=sb.duration;
+        }
+        for(int k=0;k<n;k++)
+            for(int i=0;i<n;i++)
+                for(int j=0;j<n;j++)
+                    if(d[i][k]+d[k][j]<d[i][j]) d[i][j]=d[i][k]+d[k][j];
+        WeAreAllConnectedBase.SegmentBase best=null;
+        int bestLowersBy=Integer.MIN_VALUE;
+        for(WeAreAllConnectedBase.SegmentBase sb:possibilities){
+            int lowersBy=0;
+            for(int i=0;i<n;i++){
+                for(int j=i;j<n;j++){
+                    double distance=d[i][j];
+                    if(d[i][sb.x]+d[sb.y][j]+sb.duration<distance){
+                        lowersBy+=distance-(d[i][sb.x]+d[sb.y][j]+sb.duration);
+                        distance=d[i][sb.x]+d[sb.y][j]+sb.duration;
+                    }
+                    if(d[i][sb.y]+d[sb.x][j]+sb.duration<distance){
+                        lowersBy+=distance-(d[i][sb.y]+d[sb.x][j]+sb.duration);
+                    }
+                }
+            }
+            if(lowersBy>bestLowersBy){
+                bestLowersBy=lowersBy;
+                best=sb;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,168 @@
+package edu.yu.da;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class WeAreAllConnectedTest {
+    private static final long INFINITY=Long.MAX_VALUE;
+    // small weights take the bucket queue, the rest the heap, and 2^30 runs paths well past Integer.MAX_VALUE
+    private static final int[] LONGEST_DURATIONS={5,1000,1<<30};
+
+    // a random system: its segments, the possible segments, and the long Floyd-Warshall distances of the segments
+    private static class Instance{
+        final int n;
+        final List<WeAreAllConnectedBase.SegmentBase> current=new ArrayList<>();
+        final List<WeAreAllConnectedBase.SegmentBase> possibilities=new ArrayList<>();
+        Instance(int trial){
+            Random random=new Random(trial);
+            this.n=2+random.nextInt(50);
+            int longest=LONGEST_DURATIONS[trial%LONGEST_DURATIONS.length];
+            // every other trial starts from a spanning tree, the rest usually leave some cities unreachable
+            if(trial%2==0){
+                for(int i=1;i<n;i++) current.add(segment(random.nextInt(i),i,random.nextInt(longest)));
+            }
+            for(int e=random.nextInt(n+1);e>0;e--){
+                int x=random.nextInt(n), y=random.nextInt(n);
+                if(x!=y) current.add(segment(x,y,random.nextInt(longest)));
+            }
+            for(int c=1+random.nextInt(40);c>0;c--){
+                int x=random.nextInt(n), y=random.nextInt(n);
+                if(x!=y) possibilities.add(segment(x,y,random.nextInt(longest)));
+            }
+        }
+    }
+
+    @Test
+    public void findBestRankAndSessionMatchBruteForce(){
+        for(int trial=0;trial<1500;trial++){
+            Instance instance=new Instance(trial);
+            if(instance.possibilities.isEmpty()) continue;
+            long[][] d=distances(instance.n,instance.current);
+            Integer[] order=bestFirst(d,instance.possibilities);
+            WeAreAllConnected solution=new WeAreAllConnected();
+            if(trial%4==0) solution.setParallelism(2);
+            assertSame(instance.possibilities.get(order[0]),
+                    solution.findBest(instance.n,instance.current,instance.possibilities),"findBest, trial "+trial);
+            int k=1+trial%5;
+            List<WeAreAllConnected.RankedSegment> ranked=solution.rank(instance.n,instance.current,instance.possibilities,k);
+            assertEquals(Math.min(k,instance.possibilities.size()),ranked.size(),"rank size, trial "+trial);
+            for(int r=0;r<ranked.size();r++){
+                int c=order[r];
+                long[] score=score(d,instance.possibilities.get(c));
+                assertSame(instance.possibilities.get(c),ranked.get(r).getSegment(),"rank "+r+", trial "+trial);
+                assertEquals(score[0],ranked.get(r).getPairsConnected(),"pairs connected, trial "+trial);
+                assertEquals(score[1],ranked.get(r).getImprovement(),"improvement, trial "+trial);
+            }
+            assertSame(instance.possibilities.get(order[0]),
+                    solution.openSession(instance.n,instance.current).findBest(instance.possibilities),
+                    "session, trial "+trial);
+        }
+    }
+
+    @Test
+    public void findBestForgetsEarlierCalls(){
+        WeAreAllConnected solution=new WeAreAllConnected();
+        List<WeAreAllConnectedBase.SegmentBase> current=List.of(segment(0,1,1),segment(1,2,1));
+        // connects 3, which nothing in the second call can match
+        WeAreAllConnectedBase.SegmentBase connecting=segment(2,3,1);
+        assertSame(connecting,solution.findBest(4,current,List.of(connecting)));
+        WeAreAllConnectedBase.SegmentBase shortcut=segment(0,2,1);
+        assertSame(shortcut,solution.findBest(3,current,List.of(shortcut)));
+    }
+
+    @Test
+    public void committingMatchesStartingAfresh(){
+        for(int trial=0;trial<300;trial++){
+            Instance instance=new Instance(trial);
+            if(instance.possibilities.isEmpty()) continue;
+            WeAreAllConnected.Session session=new WeAreAllConnected().openSession(instance.n,instance.current);
+            List<WeAreAllConnectedBase.SegmentBase> committed=new ArrayList<>(instance.current);
+            List<WeAreAllConnectedBase.SegmentBase> left=new ArrayList<>(instance.possibilities);
+            for(int round=0;round<3&&!left.isEmpty();round++){
+                WeAreAllConnectedBase.SegmentBase chosen=session.findBest(left);
+                assertSame(new WeAreAllConnected().findBest(instance.n,committed,left),chosen,
+                        "round "+round+", trial "+trial);
+                session.commit(chosen);
+                committed.add(chosen);
+                left.remove(chosen);
+                long[][] d=distances(instance.n,committed);
+                for(int i=0;i<instance.n;i++)
+                    for(int j=0;j<instance.n;j++)
+                        assertEquals(d[i][j]==INFINITY?DistanceMatrix.INFINITY:d[i][j],session.distance(i,j),
+                                "distance after round "+round+", trial "+trial);
+            }
+        }
+    }
+
+    @Test
+    public void committingWidensIntCellsWhenPathsOutgrowAnInt(){
+        int longest=Integer.MAX_VALUE/2;
+        List<WeAreAllConnectedBase.SegmentBase> current=List.of(segment(0,1,longest),segment(1,2,longest));
+        WeAreAllConnected.Session session=new WeAreAllConnected().openSession(4,current);
+        assertEquals(2L*longest,session.distance(0,2));
+        assertEquals(DistanceMatrix.INFINITY,session.distance(0,3));
+        session.commit(segment(2,3,longest));
+        assertEquals(3L*longest,session.distance(0,3));
+        assertEquals(2L*longest,session.distance(1,3));
+        assertEquals(2L*longest,session.distance(0,2));
+        session.commit(segment(0,3,1));
+        assertEquals(longest+1L,session.distance(0,2));
+    }
+
+    private static WeAreAllConnectedBase.SegmentBase segment(int x, int y, int duration){
+        return new WeAreAllConnected.Segment(x,y,duration);
+    }
+
+    private static long[][] distances(int n, List<WeAreAllConnectedBase.SegmentBase> segments){
+        long[][] d=new long[n][n];
+        for(long[] row:d) Arrays.fill(row,INFINITY);
+        for(int i=0;i<n;i++) d[i][i]=0;
+        for(WeAreAllConnectedBase.SegmentBase sb:segments){
+            d[sb.x][sb.y]=Math.min(d[sb.x][sb.y],sb.duration);
+            d[sb.y][sb.x]=d[sb.x][sb.y];
+        }
+        for(int k=0;k<n;k++)
+            for(int i=0;i<n;i++)
+                for(int j=0;j<n;j++)
+                    if(d[i][k]!=INFINITY&&d[k][j]!=INFINITY) d[i][j]=Math.min(d[i][j],d[i][k]+d[k][j]);
+        return d;
+    }
+
+    // pairs connected, then the lowering of the sum of the connected distances, net of the newly connected ones
+    private static long[] score(long[][] d, WeAreAllConnectedBase.SegmentBase sb){
+        long connected=0, improvement=0;
+        for(int i=0;i<d.length;i++){
+            for(int j=i;j<d.length;j++){
+                long shortest=d[i][j];
+                if(d[i][sb.x]!=INFINITY&&d[sb.y][j]!=INFINITY) shortest=Math.min(shortest,d[i][sb.x]+sb.duration+d[sb.y][j]);
+                if(d[i][sb.y]!=INFINITY&&d[sb.x][j]!=INFINITY) shortest=Math.min(shortest,d[i][sb.y]+sb.duration+d[sb.x][j]);
+                if(d[i][j]==INFINITY&&shortest!=INFINITY){
+                    connected++;
+                    improvement-=shortest;
+                }
+                else if(d[i][j]!=INFINITY) improvement+=d[i][j]-shortest;
+            }
+        }
+        return new long[]{connected,improvement};
+    }
+
+    // the indices of the possibilities, best first, ties in their order
+    private static Integer[] bestFirst(long[][] d, List<WeAreAllConnectedBase.SegmentBase> possibilities){
+        long[][] scores=new long[possibilities.size()][];
+        Integer[] order=new Integer[possibilities.size()];
+        for(int c=0;c<order.length;c++){
+            scores[c]=score(d,possibilities.get(c));
+            order[c]=c;
+        }
+        Arrays.sort(order,(a,b)->scores[a][0]!=scores[b][0]?Long.compare(scores[b][0],scores[a][0])
+                :scores[a][1]!=scores[b][1]?Long.compare(scores[b][1],scores[a][1]):Integer.compare(a,b));
+        return order;
+    }
+}
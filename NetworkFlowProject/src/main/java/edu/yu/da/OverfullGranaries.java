@@ -10,75 +10,53 @@ package edu.yu.da;
  */
 
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 public class OverfullGranaries {
     /**
-     * code for FlowEdge, FlowNetwork and FordFulkerson is based on code from Robert Sedgewick
+     * code for FlowNetwork and FordFulkerson is based on code from Robert Sedgewick
      * the original code can be found here: https://algs4.cs.princeton.edu/64maxflow/FordFulkerson.java
-     * here: https://algs4.cs.princeton.edu/64maxflow/FlowEdge.java.html
      * and here: https://algs4.cs.princeton.edu/code/edu/princeton/cs/algs4/FlowNetwork.java
      * I edited these classes, adapting them to suit this problem, and tweaking the code to conform to what I need,
      * but they are based on the classes found at the above links
+     *
+     * a flow network stored as its compressed sparse row residual graph
+     * every edge is a forward arc and a paired reverse arc, the arcs leaving each vertex are stored contiguously, and
+     * each arc holds its residual capacity, so the flow on an edge is the residual capacity of its reverse arc
+     * the engines below walk (and update) these int and long arrays in place: there is no object per edge and no
+     * per solve copy of the graph
+     * edges are numbered in the order they are added and loops get no arcs.  edges and vertices added after the arcs
+     * were laid out only go into the per edge arrays, and the next compact() lays every arc out again in O(V + E),
+     * keeping the flow, so the network can still grow one edge at a time after a solve
      */
-    class FlowEdge {
-        private final int v;             // from
-        private final int w;             // to
-        private final int capacity;   // capacity
-        private int flow;             // flow
-        public FlowEdge(int v, int w, int capacity) {
-            this.v=v;
-            this.w=w;
-            this.capacity=capacity;
-            this.flow=0;
-        }
-        public int from() {return v;}
-        public int to() {return w;}
-        public int capacity() {return capacity;}
-        public int flow() {return flow;}
-        public int other(int vertex) {
-            if      (vertex == v) return w;
-            else if (vertex == w) return v;
-            else throw new IllegalArgumentException("invalid endpoint");
-        }
-        /**
-         * Returns the residual capacity of the edge in the direction
-         *  to the given {@code vertex}.
-         * @param vertex one endpoint of the edge
-         * @return the residual capacity of the edge in the direction to the given vertex
-         *   If {@code vertex} is the tail vertex, the residual capacity equals
-         *   {@code capacity() - flow()}; if {@code vertex} is the head vertex, the
-         *   residual capacity equals {@code flow()}.
-         * @throws IllegalArgumentException if {@code vertex} is not one of the endpoints of the edge
-         */
-        public int residualCapacityTo(int vertex) {
-            if      (vertex == v) return flow;              // backward edge
-            else if (vertex == w) return capacity - flow;   // forward edge
-            else throw new IllegalArgumentException("invalid endpoint");
-        }
-
-        /**
-         * Increases the flow on the edge in the direction to the given vertex.
-         * If {@code vertex} is the tail vertex, this increases the flow on the edge by {@code delta};
-         * if {@code vertex} is the head vertex, this decreases the flow on the edge by {@code delta}.
-         * @param vertex one endpoint of the edge
-         * @param delta amount by which to increase flow
-         * @throws IllegalArgumentException if {@code vertex} is not one of the endpoints
-         *         of the edge
-         * @throws IllegalArgumentException if {@code delta} makes the flow
-         *         on the edge either negative or larger than its capacity
-         * @throws IllegalArgumentException if {@code delta} is {@code NaN}
-         */
-        public void addResidualFlowTo(int vertex, int delta) {
-            if (!(delta >= 0)) throw new IllegalArgumentException("Delta must be non-negative");
-            if      (vertex == v) flow -= delta;           // backward edge
-            else if (vertex == w) flow += delta;           // forward edge
-        }
-    }
     class FlowNetwork {
         private int V;
         private int E;
-        private List<FlowEdge>[] adj;
+        // per edge, indexed by edge number
+        private int[] from=new int[16];
+        private int[] to=new int[16];
+        private long[] capacity=new long[16];
+        private int[] cost=new int[16];          // cost per unit of flow, only used by MinCostFlow
+        private int[] edgeArc=new int[16];       // edgeArc[e] = forward arc of e, -1 for a loop
+        private int laidOut=0;                   // edges 0..laidOut-1 have their arcs laid out
+        // per arc
+        private int[] start;      // arcs leaving v are start[v] .. start[v+1]-1
+        private int[] head;       // head[a] = vertex arc a points to
+        private int[] rev;        // rev[a] = the paired arc pointing the other way
+        private long[] cap;       // cap[a] = residual capacity of arc a
+        private int[] arcEdge;    // arcEdge[a] = the edge arc a belongs to
         /**
          * Initializes an empty flow network with {@code V} vertices and 0 edges.
          * @param V the number of vertices
@@ -88,101 +66,312 @@ public class OverfullGranaries {
             if (V < 0) throw new IllegalArgumentException("Number of vertices in a Graph must be non-negative");
             this.V = V;
             this.E = 0;
-            adj = (List<FlowEdge>[]) new ArrayList[V];
-            for (int v = 0; v < V; v++)
-                adj[v] = new ArrayList<>();
         }
         public int V() {return V;}
         public int E() {return E;}
-        public void addEdge(FlowEdge e) {
-            int v = e.from();
-            int w = e.to();
-            adj[v].add(e);
-            adj[w].add(e);
-            E++;
-        }
-        public Iterable<FlowEdge> adj(int v) {
-            return adj[v];
-        }
-        // return list of all edges - excludes self loops
-        public Iterable<FlowEdge> edges() {
-            List<FlowEdge> list = new ArrayList<>();
-            for (int v = 0; v < V; v++)
-                for (FlowEdge e : adj(v)) {
-                    if (e.to() != v)
-                        list.add(e);
-                }
-            return list;
-        }
-    }
-    class FordFulkerson {
-        private boolean[] marked;     // marked[v] = true iff s->v path in residual graph
-        private FlowEdge[] edgeTo;    // edgeTo[v] = last edge on shortest residual s->v path
-        private int value=0;         // current value of max flow
+        // adds an isolated vertex and returns its index
+        public int addVertex() {
+            return V++;
+        }
+        // adds an edge carrying no flow and returns its number
+        public int addEdge(int v, int w, long capacity, int cost) {
+            if (E == from.length) {
+                from = Arrays.copyOf(from, 2*E);
+                to = Arrays.copyOf(to, 2*E);
+                this.capacity = Arrays.copyOf(this.capacity, 2*E);
+                this.cost = Arrays.copyOf(this.cost, 2*E);
+                edgeArc = Arrays.copyOf(edgeArc, 2*E);
+            }
+            from[E] = v;
+            to[E] = w;
+            this.capacity[E] = capacity;
+            this.cost[E] = cost;
+            edgeArc[E] = -1;
+            return E++;
+        }
+        public int from(int e) {return from[e];}
+        public int to(int e) {return to[e];}
+        public long capacity(int e) {return capacity[e];}
+        public int cost(int e) {return cost[e];}
+        public long flow(int e) {
+            return e < laidOut && edgeArc[e] >= 0 ? cap[rev[edgeArc[e]]] : 0;
+        }
+        // callers are responsible for repairing the flow if it no longer fits
+        public void changeCapacity(int e, long capacity) {
+            if (e < laidOut && edgeArc[e] >= 0) cap[edgeArc[e]] += capacity - this.capacity[e];
+            this.capacity[e] = capacity;
+        }
+        // pushes delta more units along arc a, which must have the residual capacity for it unless a repair says so
+        public void addResidualFlow(int a, long delta) {
+            cap[a] -= delta;
+            cap[rev[a]] += delta;
+        }
+        // whether arc a runs the same way as its edge
+        public boolean isForward(int a) {
+            return edgeArc[arcEdge[a]] == a;
+        }
+        /**
+         * lays out the arcs of any edges and vertices added since the last call, keeping the flow on the others
+         * every engine calls it before walking the arcs, and no edge or vertex may be added while one runs
+         */
+        public void compact() {
+            if (laidOut == E && start != null && start.length == V+1) return;
+            int[] oldRev = rev;
+            long[] oldCap = cap;
+            start = new int[V+1];
+            // the edges by tail, in the order they were added, which is the order the arcs of each vertex are laid out in
+            int[] byTail = new int[V+1];
+            int m = 0;
+            for (int e = 0; e < E; e++) {
+                if (from[e] == to[e]) continue;
+                start[from[e]+1]++;
+                start[to[e]+1]++;
+                byTail[from[e]+1]++;
+                m++;
+            }
+            for (int v = 0; v < V; v++) {
+                start[v+1] += start[v];
+                byTail[v+1] += byTail[v];
+            }
+            int[] order = new int[m];
+            for (int e = 0; e < E; e++) {
+                if (from[e] != to[e]) order[byTail[from[e]]++] = e;
+            }
+            head = new int[2*m];
+            rev = new int[2*m];
+            cap = new long[2*m];
+            arcEdge = new int[2*m];
+            int[] fill = Arrays.copyOf(start, V);
+            for (int e = 0; e < E; e++) {
+                if (from[e] == to[e]) edgeArc[e] = -1;
+            }
+            for (int e : order) {
+                long flow = e < laidOut ? oldCap[oldRev[edgeArc[e]]] : 0;
+                int forward = fill[from[e]]++;
+                int backward = fill[to[e]]++;
+                head[forward] = to[e];
+                head[backward] = from[e];
+                rev[forward] = backward;
+                rev[backward] = forward;
+                cap[forward] = capacity[e] - flow;
+                cap[backward] = flow;
+                arcEdge[forward] = e;
+                arcEdge[backward] = e;
+                edgeArc[e] = forward;
+            }
+            laidOut = E;
+        }
+        // the most recently added edge from v to w, -1 if there is none
+        public int lastEdge(int v, int w) {
+            compact();
+            int last = -1;
+            for (int a = start[v]; a < start[v+1]; a++)
+                if (head[a] == w && isForward(a)) last = Math.max(last, arcEdge[a]);
+            return last;
+        }
+        // marks every vertex reachable from any of the given vertices in the residual graph, in a single traversal
+        public boolean[] residualReachableFrom(int... sources) {
+            compact();
+            boolean[] reachable = new boolean[V];
+            int[] queue = new int[V];
+            int qHead = 0, qTail = 0;
+            for (int from : sources) {
+                if (reachable[from]) continue;
+                queue[qTail++] = from;
+                reachable[from] = true;
+            }
+            while (qHead < qTail) {
+                int v = queue[qHead++];
+                for (int a = start[v]; a < start[v+1]; a++) {
+                    int w = head[a];
+                    if (!reachable[w] && cap[a] > 0) {
+                        reachable[w] = true;
+                        queue[qTail++] = w;
+                    }
+                }
+            }
+            return reachable;
+        }
+        /**
+         * exact push-relabel heights: distance to t for vertices that can still reach t in the residual graph,
+         * V + distance to s for those that can only reach s, and 2V for the rest
+         * @param queue scratch space of at least V entries
+         */
+        public void distanceLabels(int s, int t, int[] height, int[] queue) {
+            Arrays.fill(height, 2*V);
+            height[t] = 0;
+            height[s] = V;
+            labelByDistanceTo(t, height, queue);
+            labelByDistanceTo(s, height, queue);
+        }
+        // label every unlabeled vertex that can still reach root with height[root] + its distance to root,
+        // by BFS over the reversed residual arcs
+        private void labelByDistanceTo(int root, int[] height, int[] queue) {
+            int qHead = 0, qTail = 0;
+            queue[qTail++] = root;
+            while (qHead < qTail) {
+                int w = queue[qHead++];
+                for (int a = start[w]; a < start[w+1]; a++) {
+                    int v = head[a];
+                    // residual arc v->w
+                    if (height[v] == 2*V && cap[rev[a]] > 0) {
+                        height[v] = height[w] + 1;
+                        queue[qTail++] = v;
+                    }
+                }
+            }
+        }
+        // zero the flow on every edge
+        public void resetFlow() {
+            for (int e = 0; e < laidOut; e++) {
+                if (edgeArc[e] < 0) continue;
+                cap[edgeArc[e]] = capacity[e];
+                cap[rev[edgeArc[e]]] = 0;
+            }
+        }
+    }
+    /**
+     * common view of a max flow engine so that solveIt and minCut don't care which algorithm computed the flow
+     */
+    interface MaxFlowSolver {
+        long value();
+        boolean inCut(int v);
+    }
+    /**
+     * the max flow engines solveIt can be told to use
+     * FORD_FULKERSON is the original Edmonds-Karp shortest augmenting path implementation and remains the default
+     * PUSH_RELABEL is highest-label push-relabel with global relabeling and the gap heuristic, for large road maps
+     * DINIC is blocking flows on BFS level graphs, for maps whose augmenting paths are short and share many roads
+     * CAPACITY_SCALING is the same augmenting path search restricted to wide residual arcs, see FordFulkerson
+     * PARALLEL_PUSH_RELABEL spreads push-relabel over setMaxFlowParallelism threads
+     */
+    public enum MaxFlowEngine {FORD_FULKERSON, PUSH_RELABEL, DINIC, CAPACITY_SCALING, PARALLEL_PUSH_RELABEL}
+    class FordFulkerson implements MaxFlowSolver {
+        // the BFS workspace is allocated once and reused by every hasAugmentingPath call
+        // marked[v] is encoded as visited[v] == epoch, so clearing it between searches is a single increment
+        private int[] parentArc;      // parentArc[v] = last arc on shortest residual s->v path
+        private int[] visited;        // visited[v] == epoch iff s->v path in residual graph
+        private int epoch=0;
+        private int[] queue;          // BFS queue, every vertex enters at most once per search so it never wraps
+        private long threshold=1;     // hasAugmentingPath only follows residual arcs at least this wide
+        private long value=0;        // current value of max flow
+        // work counters for SolveMetrics, plain fields bumped once per path, search or vertex so they cost next to nothing
+        private long augmentingPaths=0;
+        private long bfsRuns=0;
+        private long arcsScanned=0;
         /**
          * @param G the flow network
          * @param s the source vertex
          * @param t the sink vertex
          */
         public FordFulkerson(FlowNetwork G, int s, int t) {
-            while (hasAugmentingPath(G, s, t)) {
+            this(G);
+            value = augment(G, s, t, Long.MAX_VALUE);
+        }
+        /**
+         * capacity scaling: augment only along residual arcs of capacity at least delta, starting delta at the
+         * largest power of two not above the widest residual arc and halving it each phase
+         * a phase can push at most 2E delta after the previous one, so there are O(E log U) augmentations instead
+         * of the many tiny bottleneck augmentations plain Edmonds-Karp makes on wide-range capacities
+         * the last phase runs with delta 1, so the flow and the cut are exactly those of the plain constructor
+         * @param G the flow network
+         * @param s the source vertex
+         * @param t the sink vertex
+         * @param scaling whether to scale, false is the same as FordFulkerson(G, s, t)
+         */
+        public FordFulkerson(FlowNetwork G, int s, int t, boolean scaling) {
+            this(G);
+            if (!scaling) {
+                value = augment(G, s, t, Long.MAX_VALUE);
+                return;
+            }
+            long widest = 1;
+            for (long c : G.cap) widest = Math.max(widest, c);
+            for (threshold = Long.highestOneBit(widest); threshold >= 1; threshold >>= 1) {
+                value += augment(G, s, t, Long.MAX_VALUE);
+            }
+            threshold = 1;
+        }
+        /**
+         * allocates the workspace without computing anything, for callers that only want augment
+         * @param G the flow network
+         */
+        public FordFulkerson(FlowNetwork G) {
+            G.compact();
+            this.parentArc=new int[G.V()];
+            this.visited=new int[G.V()];
+            this.queue=new int[G.V()];
+        }
+        /**
+         * pushes flow from s to t along shortest residual paths, starting from whatever flow G already carries
+         * @param limit stop once this much has been pushed
+         * @return the amount of flow pushed
+         */
+        public long augment(FlowNetwork G, int s, int t, long limit) {
+            long pushed = 0;
+            while (pushed < limit && hasAugmentingPath(G, s, t)) {
                 // compute bottleneck capacity
-                int bottle = Integer.MAX_VALUE;
-                for (int v = t; v != s; v = edgeTo[v].other(v)) {
-                    bottle = Math.min(bottle, edgeTo[v].residualCapacityTo(v));
+                long bottle = limit - pushed;
+                for (int v = t; v != s; v = G.head[G.rev[parentArc[v]]]) {
+                    bottle = Math.min(bottle, G.cap[parentArc[v]]);
                 }
                 // augment flow
-                for (int v = t; v != s; v = edgeTo[v].other(v)) {
-                    edgeTo[v].addResidualFlowTo(v, bottle);
+                for (int v = t; v != s; v = G.head[G.rev[parentArc[v]]]) {
+                    G.addResidualFlow(parentArc[v], bottle);
                 }
-                value += bottle;
+                pushed += bottle;
+                augmentingPaths++;
             }
+            return pushed;
         }
-        public int value() {
+        public long value() {
             return value;
         }
         public boolean inCut(int v) {
-            return marked[v];
-        }
-        //must be called before getMarkedFromSpecificVertexNotSource is ever invoked or results will be undefined
-        public boolean[] getMarkedAfterFordFulkersonBeforeBFSCalledFromSpecificVertex(){return this.marked;}
-        //must be called after getMarked if you want getMarked to have the right values
-        public boolean[] getMarkedFromSpecificVertexNotSource(FlowNetwork G,int vertex, int t){
-            hasAugmentingPath(G,vertex,t);
-            return this.getMarkedAfterFordFulkersonBeforeBFSCalledFromSpecificVertex();
+            return visited[v] == epoch;
         }
+        public long augmentingPaths() {return augmentingPaths;}
+        public long bfsRuns() {return bfsRuns;}
+        public long arcsScanned() {return arcsScanned;}
         // is there an augmenting path?
-        // if so, upon termination edgeTo[] will contain a parent-link representation of such a path
+        // if so, upon termination parentArc[] will contain a parent-link representation of such a path
         // this implementation finds a shortest augmenting path (fewest number of edges),
         // which performs well both in theory and in practice
-        private boolean hasAugmentingPath(FlowNetwork G, int s, int t) {
-            edgeTo = new FlowEdge[G.V()];
-            marked = new boolean[G.V()];
+        // allocates nothing: it only walks the arc arrays of G
+        boolean hasAugmentingPath(FlowNetwork G, int s, int t) {
+            if (++epoch == Integer.MAX_VALUE) {
+                Arrays.fill(visited, 0);
+                epoch = 1;
+            }
+            bfsRuns++;
             // breadth-first search
-            Queue<Integer> queue = new LinkedList<>();
-            queue.add(s);
-            marked[s] = true;
-            while (!queue.isEmpty() && !marked[t]) {
-                int v = queue.remove();
-                for (FlowEdge e : G.adj(v)) {
-                    int w = e.other(v);
+            int[] start = G.start, head = G.head;
+            long[] cap = G.cap;
+            int qHead = 0, qTail = 0;
+            queue[qTail++] = s;
+            visited[s] = epoch;
+            while (qHead < qTail && visited[t] != epoch) {
+                int v = queue[qHead++];
+                arcsScanned += start[v+1] - start[v];
+                for (int a = start[v]; a < start[v+1]; a++) {
+                    int w = head[a];
                     // if residual capacity from v to w
-                    if (e.residualCapacityTo(w) > 0 && !marked[w]) {
-                        edgeTo[w] = e;
-                        marked[w] = true;
-                        queue.add(w);
+                    if (cap[a] >= threshold && visited[w] != epoch) {
+                        parentArc[w] = a;
+                        visited[w] = epoch;
+                        queue[qTail++] = w;
                     }
                 }
             }
             // is there an augmenting path?
-            return marked[t];
+            return visited[t] == epoch;
         }
         // return excess flow at vertex v
-        private int excess(FlowNetwork G, int v) {
-            int excess = 0;
-            for (FlowEdge e : G.adj(v)) {
-                if (v == e.from()) excess -= e.flow();
-                else excess += e.flow();
+        private long excess(FlowNetwork G, int v) {
+            long excess = 0;
+            for (int a = G.start[v]; a < G.start[v+1]; a++) {
+                if (G.isForward(a)) excess -= G.cap[G.rev[a]];
+                else excess += G.cap[a];
             }
             return excess;
         }
@@ -227,12 +416,10 @@ public class OverfullGranaries {
                 return false;
             }
             // check that value of min cut = value of max flow
-            int mincutValue = 0;
-            for (int v = 0; v < G.V(); v++) {
-                for (FlowEdge e : G.adj(v)) {
-                    if ((v == e.from()) && inCut(e.from()) && !inCut(e.to()))
-                        mincutValue += e.capacity();
-                }
+            long mincutValue = 0;
+            for (int e = 0; e < G.E(); e++) {
+                if (inCut(G.from(e)) && !inCut(G.to(e)))
+                    mincutValue += G.capacity(e);
             }
             if (Math.abs(mincutValue - value) > 0) {
                 System.err.println("Max flow value = " + value + ", min cut value = " + mincutValue);
@@ -241,30 +428,1155 @@ public class OverfullGranaries {
             return true;
         }
     }
-    public class InitialEntryPreMappingStringToInt{
-        private String from;
-        private String to;
-        private int capacity;
-        public InitialEntryPreMappingStringToInt(String from, String to, int capacity){
-            this.from=from;
-            this.to=to;
+    /**
+     * push-relabel max flow using highest-label selection, periodic global relabeling and the gap heuristic
+     * runs as a single phase: active vertices that can no longer reach the sink are lifted above V and keep
+     * discharging until their excess has been returned to the source, so on termination the network holds an
+     * ordinary max flow and the residual graph (and therefore the min cut) is the same one FordFulkerson leaves behind
+     * heights of active vertices never exceed 2V-1, giving O(V^2 sqrt(E)) in the worst case
+     * works on the arcs of the FlowNetwork in place
+     */
+    class PushRelabel implements MaxFlowSolver {
+        private final FlowNetwork G;
+        private final int n;
+        private final int s;
+        private final int t;
+        private final int[] start;
+        private final int[] head;
+        private final int[] rev;
+        private final long[] cap;
+        private final int[] height;
+        private final long[] excess;
+        private final int[] currentArc;   // currentArc[v] = next arc of v to try
+        private final int[] count;        // count[h] = number of vertices at height h, only maintained for h < n
+        private final int[] bucketHead;   // bucketHead[h] = first active vertex at height h, -1 if none
+        private final int[] nextActive;
+        private final int[] queue;
+        private int maxActive=-1;         // highest height that may hold an active vertex
+        private int relabelsSinceGlobal=0;
+        private boolean[] marked;         // marked[v] = true iff s->v path in residual graph, found on the first inCut
+        private long value=0;
+        /**
+         * @param G the flow network
+         * @param s the source vertex
+         * @param t the sink vertex
+         */
+        public PushRelabel(FlowNetwork G, int s, int t) {
+            G.compact();
+            this.G=G;
+            this.n=G.V();
+            this.s=s;
+            this.t=t;
+            this.start=G.start;
+            this.head=G.head;
+            this.rev=G.rev;
+            this.cap=G.cap;
+            this.height=new int[n];
+            this.excess=new long[n];
+            this.currentArc=new int[n];
+            this.count=new int[n+1];
+            this.bucketHead=new int[2*n+1];
+            this.nextActive=new int[n];
+            this.queue=new int[n];
+            // saturate every arc out of the source
+            for (int a = start[s]; a < start[s+1]; a++) {
+                long delta = cap[a];
+                if (delta == 0) continue;
+                cap[a] = 0;
+                cap[rev[a]] += delta;
+                excess[s] -= delta;
+                excess[head[a]] += delta;
+            }
+            globalRelabel();
+            while (maxActive >= 0) {
+                int u = bucketHead[maxActive];
+                if (u == -1) {
+                    maxActive--;
+                    continue;
+                }
+                bucketHead[maxActive] = nextActive[u];
+                discharge(u);
+                if (relabelsSinceGlobal >= n) globalRelabel();
+            }
+            this.value=excess[t];
+        }
+        public long value() {
+            return value;
+        }
+        // solveIt finds the cut itself, so the traversal only runs for callers like check that ask
+        public boolean inCut(int v) {
+            if (marked == null) marked = G.residualReachableFrom(s);
+            return marked[v];
+        }
+        // push excess out of u until it is gone, relabeling whenever u runs out of admissible arcs
+        private void discharge(int u) {
+            while (excess[u] > 0) {
+                if (currentArc[u] == start[u+1]) {
+                    relabel(u);
+                    if (height[u] >= 2*n) return;   // unreachable from everything, cannot happen for a vertex with excess
+                    continue;
+                }
+                int a = currentArc[u];
+                int w = head[a];
+                if (cap[a] > 0 && height[u] == height[w] + 1) {
+                    long delta = Math.min(excess[u], cap[a]);
+                    cap[a] -= delta;
+                    cap[rev[a]] += delta;
+                    excess[u] -= delta;
+                    if (excess[w] == 0 && w != s && w != t) activate(w);
+                    excess[w] += delta;
+                }
+                else currentArc[u]++;
+            }
+        }
+        private void relabel(int u) {
+            int oldHeight = height[u];
+            int minHeight = 2*n;
+            for (int a = start[u]; a < start[u+1]; a++) {
+                if (cap[a] > 0 && height[head[a]] < minHeight) minHeight = height[head[a]];
+            }
+            setHeight(u, minHeight + 1);
+            currentArc[u] = start[u];
+            relabelsSinceGlobal++;
+            // gap heuristic: nothing left at oldHeight, so nothing above it (and below n) can reach the sink
+            if (oldHeight < n && count[oldHeight] == 0) {
+                for (int v = 0; v < n; v++) {
+                    if (height[v] > oldHeight && height[v] < n) {
+                        setHeight(v, n);
+                        currentArc[v] = start[v];
+                    }
+                }
+            }
+        }
+        // recompute exact distances to the sink (or back to the source, offset by n) with two reverse residual BFS
+        private void globalRelabel() {
+            relabelsSinceGlobal = 0;
+            Arrays.fill(count, 0);
+            G.distanceLabels(s, t, height, queue);
+            Arrays.fill(bucketHead, -1);
+            maxActive = -1;
+            for (int v = 0; v < n; v++) {
+                if (height[v] < n) count[height[v]]++;
+                currentArc[v] = start[v];
+                if (excess[v] > 0 && v != s && v != t) activate(v);
+            }
+        }
+        private void setHeight(int v, int h) {
+            if (height[v] < n) count[height[v]]--;
+            height[v] = h;
+            if (h < n) count[h]++;
+        }
+        private void activate(int v) {
+            int h = height[v];
+            nextActive[v] = bucketHead[h];
+            bucketHead[h] = v;
+            if (h > maxActive) maxActive = h;
+        }
+    }
+    /**
+     * synchronous parallel push-relabel
+     * every round is a push pulse followed by a relabel pulse, each spread over the active vertices on a fork/join pool
+     * - push pulse: heights are frozen, and each active vertex pushes its excess along admissible arcs.  a vertex only
+     *   ever lowers the residual capacity of its own arcs, the matching increase of the reverse arc is applied in a
+     *   second pass, and excess arriving at a vertex is accumulated atomically, so no two threads write the same slot
+     * - relabel pulse: each active vertex left with excess and no admissible arc computes its new height from the
+     *   heights of the previous pulse, and all new heights are committed together
+     * heights never decrease and are computed against a frozen snapshot, so the labeling stays valid exactly as in the
+     * sequential algorithm.  exact global relabels run between rounds once V relabels have accumulated
+     * the flow it ends with may differ from the sequential engines, but the value and the min cut do not
+     */
+    class ParallelPushRelabel implements MaxFlowSolver {
+        private static final int SEQUENTIAL_CUTOFF=256;  // pulses over fewer active vertices aren't worth forking
+        private final FlowNetwork G;
+        private final int n;
+        private final int s;
+        private final int t;
+        private final int[] start;
+        private final int[] head;
+        private final int[] rev;
+        private final long[] cap;
+        private final long[] pushed;        // pushed[a] = flow sent along arc a this pulse, not yet added to rev[a]
+        private final int[] height;
+        private final int[] newHeight;
+        private final long[] excess;
+        private final AtomicLongArray incoming;      // excess received this pulse, merged into excess afterwards
+        private final AtomicIntegerArray received;   // received[v] = 1 iff v is already in touched this pulse
+        private final int[] touched;
+        private final AtomicInteger touchedCount=new AtomicInteger();
+        private final AtomicInteger relabels=new AtomicInteger();
+        private final int[] inActive;       // inActive[v] == round iff v was already added to next this round
+        private int[] active;
+        private int[] next;
+        private int activeCount=0;
+        private final int[] queue;
+        private final ForkJoinPool pool;
+        private boolean[] marked;           // marked[v] = true iff s->v path in residual graph, found on the first inCut
+        private long value=0;
+        /**
+         * @param G the flow network
+         * @param s the source vertex
+         * @param t the sink vertex
+         * @param threads the number of worker threads
+         */
+        public ParallelPushRelabel(FlowNetwork G, int s, int t, int threads) {
+            if (threads < 1) throw new IllegalArgumentException("need at least one thread");
+            G.compact();
+            this.G=G;
+            this.n=G.V();
+            this.s=s;
+            this.t=t;
+            this.start=G.start;
+            this.head=G.head;
+            this.rev=G.rev;
+            this.cap=G.cap;
+            this.pushed=new long[cap.length];
+            this.height=new int[n];
+            this.newHeight=new int[n];
+            this.excess=new long[n];
+            this.incoming=new AtomicLongArray(n);
+            this.received=new AtomicIntegerArray(n);
+            this.touched=new int[n];
+            this.inActive=new int[n];
+            this.active=new int[n];
+            this.next=new int[n];
+            this.queue=new int[n];
+            this.pool=new ForkJoinPool(threads);
+            try {
+                // saturate every arc out of the source
+                for (int a = start[s]; a < start[s+1]; a++) {
+                    long delta = cap[a];
+                    if (delta == 0) continue;
+                    cap[a] = 0;
+                    cap[rev[a]] += delta;
+                    excess[s] -= delta;
+                    excess[head[a]] += delta;
+                }
+                globalRelabel();
+                for (int round = 1; activeCount > 0; round++) {
+                    pushPulse();
+                    collectActive(round);
+                    relabelPulse();
+                    if (relabels.get() >= n) globalRelabel();
+                }
+            }
+            finally {
+                pool.shutdown();
+            }
+            this.value=excess[t];
+        }
+        public long value() {
+            return value;
+        }
+        // solveIt finds the cut itself, so the traversal only runs for callers like check that ask
+        public boolean inCut(int v) {
+            if (marked == null) marked = G.residualReachableFrom(s);
+            return marked[v];
+        }
+        private void pushPulse() {
+            touchedCount.set(0);
+            forEachActive(this::pushFrom);
+            forEachActive(this::applyReverseArcs);
+            int count = touchedCount.get();
+            forEach(count, i -> {
+                int w = touched[i];
+                excess[w] += incoming.getAndSet(w, 0);
+                received.set(w, 0);
+            });
+        }
+        // push as much of v's excess as possible along arcs that are admissible under the frozen heights
+        private void pushFrom(int v) {
+            long e = excess[v];
+            int hv = height[v];
+            for (int a = start[v], end = start[v+1]; a < end && e > 0; a++) {
+                int w = head[a];
+                if (cap[a] > 0 && hv == height[w] + 1) {
+                    long delta = Math.min(e, cap[a]);
+                    cap[a] -= delta;
+                    pushed[a] += delta;
+                    e -= delta;
+                    incoming.addAndGet(w, delta);
+                    if (received.compareAndSet(w, 0, 1)) touched[touchedCount.getAndIncrement()] = w;
+                }
+            }
+            excess[v] = e;
+        }
+        private void applyReverseArcs(int v) {
+            for (int a = start[v], end = start[v+1]; a < end; a++) {
+                if (pushed[a] != 0) {
+                    cap[rev[a]] += pushed[a];
+                    pushed[a] = 0;
+                }
+            }
+        }
+        // the next active set is whatever still has excess among the old active set and the vertices pushed to
+        private void collectActive(int round) {
+            int count = 0;
+            for (int i = 0; i < activeCount; i++) {
+                int v = active[i];
+                if (excess[v] > 0 && inActive[v] != round) {
+                    inActive[v] = round;
+                    next[count++] = v;
+                }
+            }
+            for (int i = 0, m = touchedCount.get(); i < m; i++) {
+                int v = touched[i];
+                if (excess[v] > 0 && v != s && v != t && inActive[v] != round) {
+                    inActive[v] = round;
+                    next[count++] = v;
+                }
+            }
+            int[] swap = active;
+            active = next;
+            next = swap;
+            activeCount = count;
+        }
+        private void relabelPulse() {
+            forEachActive(v -> {
+                int minHeight = 2*n;
+                for (int a = start[v], end = start[v+1]; a < end; a++) {
+                    if (cap[a] > 0 && height[head[a]] < minHeight) minHeight = height[head[a]];
+                }
+                // a vertex that still has an admissible arc keeps its height
+                newHeight[v] = Math.max(height[v], minHeight + 1);
+                if (newHeight[v] != height[v]) relabels.incrementAndGet();
+            });
+            int count = 0;
+            for (int i = 0; i < activeCount; i++) {
+                int v = active[i];
+                height[v] = newHeight[v];
+                if (height[v] < 2*n) active[count++] = v;   // 2V means unreachable from everything, cannot hold excess
+            }
+            activeCount = count;
+        }
+        private void globalRelabel() {
+            relabels.set(0);
+            G.distanceLabels(s, t, height, queue);
+            activeCount = 0;
+            for (int v = 0; v < n; v++) {
+                if (excess[v] > 0 && v != s && v != t) active[activeCount++] = v;
+            }
+        }
+        private void forEachActive(IntConsumer body) {
+            int[] vertices = active;
+            forEach(activeCount, i -> body.accept(vertices[i]));
+        }
+        private void forEach(int count, IntConsumer body) {
+            if (count < SEQUENTIAL_CUTOFF) {
+                for (int i = 0; i < count; i++) body.accept(i);
+                return;
+            }
+            pool.submit(() -> IntStream.range(0, count).parallel().forEach(body)).join();
+        }
+    }
+    /**
+     * Dinic's blocking flow max flow
+     * each phase builds a BFS level graph from the source and then saturates it with depth first searches that only
+     * follow arcs one level deeper, remembering per vertex which arc to resume from so every arc is discarded at most
+     * once per phase.  O(V^2 E) in general, O(E sqrt(V)) on unit capacity and bipartite style networks
+     * the search is iterative because level graphs on large road maps are far deeper than the thread stack
+     * works on the arcs of the FlowNetwork in place
+     */
+    class Dinic implements MaxFlowSolver {
+        private final int s;
+        private final int t;
+        private final int[] start;
+        private final int[] head;
+        private final int[] rev;
+        private final long[] cap;
+        private final int[] level;        // level[v] = BFS distance from s in the residual graph, -1 if unreached or a dead end
+        private final int[] currentArc;   // currentArc[v] = next arc of v to try this phase
+        private final int[] queue;
+        private final int[] pathArc;      // pathArc[i] = i-th arc of the current s->u search path
+        private boolean[] marked;         // marked[v] = true iff s->v path in residual graph
+        private long value=0;
+        /**
+         * @param G the flow network
+         * @param s the source vertex
+         * @param t the sink vertex
+         */
+        public Dinic(FlowNetwork G, int s, int t) {
+            G.compact();
+            int n=G.V();
+            this.s=s;
+            this.t=t;
+            this.start=G.start;
+            this.head=G.head;
+            this.rev=G.rev;
+            this.cap=G.cap;
+            this.level=new int[n];
+            this.currentArc=new int[n];
+            this.queue=new int[n];
+            this.pathArc=new int[n];
+            while (buildLevelGraph()) {
+                System.arraycopy(start, 0, currentArc, 0, n);
+                blockingFlow();
+            }
+            // the last (failed) BFS reached exactly the source side of the min cut
+            this.marked=new boolean[n];
+            for (int v = 0; v < n; v++) marked[v] = level[v] >= 0;
+        }
+        public long value() {
+            return value;
+        }
+        public boolean inCut(int v) {
+            return marked[v];
+        }
+        // full BFS over the residual graph, returns whether t was reached
+        private boolean buildLevelGraph() {
+            Arrays.fill(level, -1);
+            int qHead = 0, qTail = 0;
+            queue[qTail++] = s;
+            level[s] = 0;
+            while (qHead < qTail) {
+                int v = queue[qHead++];
+                for (int a = start[v]; a < start[v+1]; a++) {
+                    int w = head[a];
+                    if (level[w] < 0 && cap[a] > 0) {
+                        level[w] = level[v] + 1;
+                        queue[qTail++] = w;
+                    }
+                }
+            }
+            return level[t] >= 0;
+        }
+        private void blockingFlow() {
+            int u = s;
+            int depth = 0;
+            while (true) {
+                if (u == t) {
+                    // augment along the path and retreat to the tail of its first saturated arc
+                    long bottle = Long.MAX_VALUE;
+                    for (int i = 0; i < depth; i++) bottle = Math.min(bottle, cap[pathArc[i]]);
+                    int firstSaturated = -1;
+                    for (int i = 0; i < depth; i++) {
+                        int a = pathArc[i];
+                        cap[a] -= bottle;
+                        cap[rev[a]] += bottle;
+                        if (firstSaturated < 0 && cap[a] == 0) firstSaturated = i;
+                    }
+                    value += bottle;
+                    depth = firstSaturated;
+                    u = head[rev[pathArc[depth]]];
+                    continue;
+                }
+                int end = start[u+1];
+                int a = currentArc[u];
+                while (a < end && (cap[a] == 0 || level[head[a]] != level[u] + 1)) a++;
+                currentArc[u] = a;
+                if (a < end) {
+                    pathArc[depth++] = a;
+                    u = head[a];
+                    continue;
+                }
+                // dead end: nothing from u reaches t in this phase
+                if (u == s) return;
+                level[u] = -1;
+                depth--;
+                u = head[rev[pathArc[depth]]];
+                currentArc[u]++;
+            }
+        }
+    }
+    /**
+     * min-cost max flow by cost scaling (Goldberg and Tarjan)
+     * PushRelabel first finds a maximum flow, ignoring costs, and every later step only moves flow around residual
+     * cycles, so the value stays maximum while the cost goes down
+     * costs are scaled up by V+1, and each refine takes an eps-optimal flow (no residual arc of reduced cost below -eps)
+     * to an eps/ALPHA-optimal one: saturate every residual arc of negative reduced cost, then push the excesses this
+     * creates along negative reduced cost arcs in FIFO order, lowering a vertex's potential when it has none
+     * a global price update, the cost scaling counterpart of PushRelabel's global relabel, runs at the start of each
+     * refine and after every V potential changes, lowering every potential at once by its distance to a deficit
+     * once refine has run with eps 1 on the scaled costs, the flow is 1/(V+1)-optimal on the real ones, and with
+     * integer costs any flow better than 1/V-optimal is optimal
+     * that is O(log(V C)) refines, each about as much work as a push-relabel max flow, instead of one Dijkstra per
+     * distinct shortest path cost
+     * requires non-negative edge costs, and starts from zero flow
+     */
+    class MinCostFlow implements MaxFlowSolver {
+        private static final int ALPHA=8;   // eps is divided by this from one refine to the next
+        private final FlowNetwork G;
+        private final int s;
+        private final int n;
+        private final int[] start;
+        private final int[] head;
+        private final int[] rev;
+        private final long[] cap;
+        private final long[] cost;        // cost[a] = V+1 times the cost per unit along arc a, negated on reverse arcs
+        private final long[] potential;
+        private final long[] excess;
+        private final int[] currentArc;   // currentArc[v] = next arc of v to try
+        private final int[] queue;        // FIFO of active vertices, each in it at most once, so it wraps at n
+        private final boolean[] queued;
+        private int relabelsSinceUpdate=0;
+        // price update workspace: Dial's buckets of vertices by distance to a deficit, in units of eps
+        private final int[] level;        // level[v] = tentative distance of v, Integer.MAX_VALUE if not reached yet
+        private final boolean[] done;     // done[v] = the distance of v is final
+        private final int[] bucketHead;   // bucketHead[k] = first vertex at distance k, -1 if none
+        private final int[] bucketNext;
+        private final int[] bucketPrev;
+        private boolean[] marked;         // marked[v] = true iff s->v path in residual graph, found on the first inCut
+        private long value=0;
+        private long totalCost=0;
+        /**
+         * @param G the flow network, carrying no flow
+         * @param s the source vertex
+         * @param t the sink vertex
+         */
+        public MinCostFlow(FlowNetwork G, int s, int t) {
+            for (int e = 0; e < G.E(); e++)
+                if (G.cost(e) < 0) throw new IllegalArgumentException("edge costs must be non-negative");
+            this.value=new PushRelabel(G, s, t).value();
+            this.G=G;
+            this.s=s;
+            this.n=G.V();
+            this.start=G.start;
+            this.head=G.head;
+            this.rev=G.rev;
+            this.cap=G.cap;
+            this.cost=new long[cap.length];
+            long eps = 0;
+            for (int e = 0; e < G.E(); e++) {
+                if (G.edgeArc[e] < 0) continue;
+                cost[G.edgeArc[e]] = (n + 1L) * G.cost(e);
+                cost[rev[G.edgeArc[e]]] = -cost[G.edgeArc[e]];
+                eps = Math.max(eps, cost[G.edgeArc[e]]);
+            }
+            this.potential=new long[n];
+            this.excess=new long[n];
+            this.currentArc=new int[n];
+            this.queue=new int[n];
+            this.queued=new boolean[n];
+            this.level=new int[n];
+            this.done=new boolean[n];
+            this.bucketHead=new int[n+1];
+            this.bucketNext=new int[n];
+            this.bucketPrev=new int[n];
+            // with zero potentials every reduced cost is at least -eps, the largest scaled cost
+            while (eps > 1) {
+                eps = Math.max(1, eps / ALPHA);
+                refine(eps);
+            }
+            for (int e = 0; e < G.E(); e++) totalCost += G.flow(e) * G.cost(e);
+        }
+        public long value() {
+            return value;
+        }
+        public long cost() {
+            return totalCost;
+        }
+        // solveIt finds the cut itself, so the traversal only runs for callers like check that ask
+        public boolean inCut(int v) {
+            if (marked == null) marked = G.residualReachableFrom(s);
+            return marked[v];
+        }
+        private long reducedCost(int a, int u) {
+            return cost[a] + potential[u] - potential[head[a]];
+        }
+        private void refine(long eps) {
+            int qHead = 0, qTail = 0, size = 0;
+            for (int u = 0; u < n; u++)
+                for (int a = start[u]; a < start[u+1]; a++)
+                    if (cap[a] > 0 && reducedCost(a, u) < 0) {
+                        excess[u] -= cap[a];
+                        excess[head[a]] += cap[a];
+                        cap[rev[a]] += cap[a];
+                        cap[a] = 0;
+                    }
+            for (int u = 0; u < n; u++) {
+                currentArc[u] = start[u];
+                if (excess[u] > 0) {
+                    queue[qTail++] = u;
+                    queued[u] = true;
+                    size++;
+                }
+            }
+            qTail %= n;
+            priceUpdate(eps);
+            while (size > 0) {
+                int u = queue[qHead];
+                qHead = (qHead + 1) % n;
+                size--;
+                queued[u] = false;
+                // discharge u
+                while (excess[u] > 0) {
+                    int a = currentArc[u];
+                    if (a == start[u+1]) {
+                        relabel(u, eps);
+                        if (++relabelsSinceUpdate >= n) priceUpdate(eps);
+                        continue;
+                    }
+                    if (cap[a] > 0 && reducedCost(a, u) < 0) {
+                        int w = head[a];
+                        long delta = Math.min(excess[u], cap[a]);
+                        cap[a] -= delta;
+                        cap[rev[a]] += delta;
+                        excess[u] -= delta;
+                        excess[w] += delta;
+                        if (excess[w] > 0 && !queued[w]) {
+                            queue[qTail] = w;
+                            qTail = (qTail + 1) % n;
+                            queued[w] = true;
+                            size++;
+                        }
+                        if (cap[a] > 0) break;
+                    }
+                    currentArc[u]++;
+                }
+            }
+        }
+        // lowers the potential of u just enough that its cheapest residual arc costs -eps, and rescans its arcs
+        // u has excess, so some flow reached it and the arc it came in on has a residual reverse arc
+        private void relabel(int u, long eps) {
+            long highest = Long.MIN_VALUE;
+            for (int a = start[u]; a < start[u+1]; a++)
+                if (cap[a] > 0) highest = Math.max(highest, potential[head[a]] - cost[a]);
+            potential[u] = highest - eps;
+            currentArc[u] = start[u];
+        }
+        /**
+         * lowers the potential of every vertex by eps times its distance to a vertex with a deficit, an arc of reduced
+         * cost rc counting as rc/eps + 1 long (0 if rc < 0), found by Dijkstra backwards from the deficits
+         * an arc can get at most eps cheaper than that length, so the flow stays eps-optimal, and every shortest path
+         * becomes admissible all the way down to a deficit
+         * the search stops once every vertex with excess is settled, or at distance V, and the vertices it didn't
+         * settle are lowered as much as the last distance settled, which keeps the same bound on their arcs
+         */
+        private void priceUpdate(long eps) {
+            relabelsSinceUpdate = 0;
+            Arrays.fill(bucketHead, -1);
+            int activeLeft = 0;
+            for (int v = 0; v < n; v++) {
+                done[v] = false;
+                level[v] = Integer.MAX_VALUE;
+                if (excess[v] < 0) bucketInsert(v, 0);
+                else if (excess[v] > 0) activeLeft++;
+            }
+            int k = 0;
+            for (; k < n && activeLeft > 0; k++) {
+                while (bucketHead[k] != -1) {
+                    int w = bucketHead[k];
+                    bucketRemove(w);
+                    done[w] = true;
+                    if (excess[w] > 0) activeLeft--;
+                    // the residual arcs into w are the reverses of its arcs
+                    for (int b = start[w]; b < start[w+1]; b++) {
+                        int u = head[b];
+                        int a = rev[b];
+                        if (cap[a] == 0 || done[u]) continue;
+                        long rc = reducedCost(a, u);
+                        long d = k + (rc < 0 ? 0 : rc / eps + 1);
+                        if (d < level[u] && d <= n) {
+                            if (level[u] != Integer.MAX_VALUE) bucketRemove(u);
+                            bucketInsert(u, (int) d);
+                        }
+                    }
+                }
+                if (activeLeft == 0) break;
+            }
+            for (int v = 0; v < n; v++) {
+                potential[v] -= eps * (done[v] ? level[v] : k);
+                currentArc[v] = start[v];
+            }
+        }
+        private void bucketInsert(int v, int k) {
+            level[v] = k;
+            bucketPrev[v] = -1;
+            bucketNext[v] = bucketHead[k];
+            if (bucketHead[k] != -1) bucketPrev[bucketHead[k]] = v;
+            bucketHead[k] = v;
+        }
+        private void bucketRemove(int v) {
+            if (bucketPrev[v] != -1) bucketNext[bucketPrev[v]] = bucketNext[v];
+            else bucketHead[level[v]] = bucketNext[v];
+            if (bucketNext[v] != -1) bucketPrev[bucketNext[v]] = bucketPrev[v];
+        }
+    }
+    /**
+     * evaluates a single road capacity change against a copy of the residual capacities of a flow network, leaving
+     * the network untouched
+     * the copy starts from the flow already in place, so it does the same overflow repair as changeCapacity and then
+     * only has to augment by the difference, with BFS shortest augmenting paths over the CSR arcs
+     * one per thread, since the copy and the BFS workspace are reused from candidate to candidate
+     */
+    class WhatIf {
+        private final int[] start;
+        private final int[] head;
+        private final int[] rev;
+        private final long[] baseCap;
+        private final long[] cap;
+        private final int[] parentArc;    // parentArc[v] = last arc on the shortest s->v path found by the BFS
+        private final int[] visited;      // visited[v] == epoch iff the current BFS reached v
+        private final int[] queue;
+        private int epoch=0;
+        // G must already be compacted, since WhatIfs on several threads share it
+        public WhatIf(FlowNetwork G) {
+            this.start=G.start;
+            this.head=G.head;
+            this.rev=G.rev;
+            this.baseCap=G.cap;
+            this.cap=new long[baseCap.length];
+            this.parentArc=new int[G.V()];
+            this.visited=new int[G.V()];
+            this.queue=new int[G.V()];
+        }
+        /**
+         * @param arc the forward arc of the changed road, -1 for a road with no arc (a loop)
+         * @param sourceArc the forward arc of the super edge feeding the road's src, -1 if there is none
+         * @param sinkArc the forward arc of the super edge draining the road's dest, -1 if there is none
+         * @param capacity the road's new capacity
+         * @param value the value of the flow the residual graph carries
+         * @return the max flow value once the road has the new capacity
+         */
+        public long evaluate(int s, int t, int arc, int sourceArc, int sinkArc, long capacity, long value) {
+            System.arraycopy(baseCap, 0, cap, 0, cap.length);
+            if (arc >= 0) {
+                long flow = cap[rev[arc]];
+                long delta = capacity - cap[arc] - flow;
+                if (flow > capacity) {
+                    // take the overflow off the road, then reroute it or cancel it back to the source and from the sink
+                    long excess = flow - capacity;
+                    int tail = head[rev[arc]];
+                    int headOfRoad = head[arc];
+                    cap[arc] = 0;
+                    cap[rev[arc]] = capacity;
+                    long cancelled = excess - augment(tail, headOfRoad, excess);
+                    if (cancelled > 0) {
+                        augment(tail, s, cancelled);
+                        augment(t, headOfRoad, cancelled);
+                        value -= cancelled;
+                    }
+                }
+                else cap[arc] += delta;
+                if (sourceArc >= 0) cap[sourceArc] += delta;
+                if (sinkArc >= 0) cap[sinkArc] += delta;
+            }
+            return value + augment(s, t, Long.MAX_VALUE);
+        }
+        // push up to limit units from `from` to `to` along shortest augmenting paths, returning the amount pushed
+        private long augment(int from, int to, long limit) {
+            long pushed = 0;
+            while (pushed < limit && hasAugmentingPath(from, to)) {
+                long bottle = limit - pushed;
+                for (int v = to; v != from; v = head[rev[parentArc[v]]]) bottle = Math.min(bottle, cap[parentArc[v]]);
+                for (int v = to; v != from; v = head[rev[parentArc[v]]]) {
+                    cap[parentArc[v]] -= bottle;
+                    cap[rev[parentArc[v]]] += bottle;
+                }
+                pushed += bottle;
+            }
+            return pushed;
+        }
+        private boolean hasAugmentingPath(int from, int to) {
+            epoch++;
+            int qHead = 0, qTail = 0;
+            visited[from] = epoch;
+            queue[qTail++] = from;
+            while (qHead < qTail) {
+                int v = queue[qHead++];
+                for (int a = start[v]; a < start[v+1]; a++) {
+                    int w = head[a];
+                    if (cap[a] > 0 && visited[w] != epoch) {
+                        parentArc[w] = a;
+                        if (w == to) return true;
+                        visited[w] = epoch;
+                        queue[qTail++] = w;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+    /**
+     * decomposes a snapshot of the flow into s->t paths and cycles, computing each one only when asked for
+     * walks forward from s along arcs that still carry flow, remembering per vertex which arc to resume from, until it
+     * either reaches t (a path) or steps back onto its own walk (a cycle); the bottleneck is taken off every arc of it,
+     * which empties at least one arc, so there are at most E of them.  a cycle met on the way to t is handed out as
+     * soon as it is found, so cycles can come before the last path.  once s carries no more flow what is left is a
+     * circulation, and the walks start from each remaining vertex in turn.  O(V) per path or cycle, O(VE) in all
+     */
+    class FlowDecomposition implements Iterator<FlowPath> {
+        private final int s;
+        private final int t;
+        private final int[] start;
+        private final int[] head;
+        private final int[] tail;
+        private final long[] flow;        // flow[a] = flow on arc a not yet assigned to a path or cycle
+        private final int[] currentArc;   // currentArc[v] = next arc of v that may still carry flow
+        private final int[] walkArc;      // walkArc[i] = i-th arc of the current walk
+        private final int[] position;     // position[v] = i iff v is the vertex after the first i arcs of the walk, else -1
+        private int depth=0;
+        private int root;
+        private FlowPath next;
+        public FlowDecomposition(FlowNetwork G, int s, int t) {
+            int n=G.V();
+            int m=0;
+            this.start=new int[n+1];
+            for (int e = 0; e < G.E(); e++)
+                if (G.from(e) != G.to(e) && G.flow(e) > 0) {
+                    start[G.from(e)+1]++;
+                    m++;
+                }
+            for (int v = 0; v < n; v++) start[v+1] += start[v];
+            this.head=new int[m];
+            this.tail=new int[m];
+            this.flow=new long[m];
+            int[] fill=Arrays.copyOf(start, n);
+            for (int e = 0; e < G.E(); e++)
+                if (G.from(e) != G.to(e) && G.flow(e) > 0) {
+                    int a = fill[G.from(e)]++;
+                    tail[a] = G.from(e);
+                    head[a] = G.to(e);
+                    flow[a] = G.flow(e);
+                }
+            this.s=s;
+            this.t=t;
+            this.currentArc=Arrays.copyOf(start, n);
+            this.walkArc=new int[n];
+            this.position=new int[n];
+            Arrays.fill(position, -1);
+            this.root=s;
+            this.position[s]=0;
+            this.next=advance();
+        }
+        public boolean hasNext() {
+            return next != null;
+        }
+        public FlowPath next() {
+            if (next == null) throw new NoSuchElementException();
+            FlowPath path = next;
+            next = advance();
+            return path;
+        }
+        private FlowPath advance() {
+            while (true) {
+                int u = depth == 0 ? root : head[walkArc[depth-1]];
+                if (u == t) return takePath();
+                int a = currentArc[u];
+                while (a < start[u+1] && flow[a] == 0) a++;
+                currentArc[u] = a;
+                if (a < start[u+1]) {
+                    int w = head[a];
+                    if (position[w] >= 0) return takeCycle(w, a);
+                    walkArc[depth++] = a;
+                    position[w] = depth;
+                    continue;
+                }
+                if (depth > 0) {
+                    // only reachable if flow isn't conserved at u: step back and never use the arc into it again
+                    position[u] = -1;
+                    currentArc[tail[walkArc[--depth]]]++;
+                    continue;
+                }
+                // the walk's root is exhausted, move on to the next vertex that may lie on a cycle
+                position[root] = -1;
+                do {
+                    if (++root == currentArc.length) return null;
+                } while (root == s || root == t);
+                position[root] = 0;
+            }
+        }
+        private FlowPath takePath() {
+            long bottle = Long.MAX_VALUE;
+            for (int i = 0; i < depth; i++) bottle = Math.min(bottle, flow[walkArc[i]]);
+            List<String> granaries = new ArrayList<>(depth-1);
+            for (int i = 0; i < depth; i++) {
+                flow[walkArc[i]] -= bottle;
+                if (i < depth-1) granaries.add(roads.name(head[walkArc[i]]));
+                position[head[walkArc[i]]] = -1;
+            }
+            depth = 0;
+            return new FlowPath(granaries, bottle, false);
+        }
+        // the walk has stepped back onto w along arc a: the cycle is the walk from w on, closed by a
+        private FlowPath takeCycle(int w, int a) {
+            int from = position[w];
+            long bottle = flow[a];
+            for (int i = from; i < depth; i++) bottle = Math.min(bottle, flow[walkArc[i]]);
+            List<String> granaries = new ArrayList<>(depth-from+1);
+            granaries.add(roads.name(w));
+            flow[a] -= bottle;
+            for (int i = from; i < depth; i++) {
+                flow[walkArc[i]] -= bottle;
+                granaries.add(roads.name(head[walkArc[i]]));
+                position[head[walkArc[i]]] = -1;
+            }
+            depth = from;
+            return new FlowPath(granaries, bottle, true);
+        }
+    }
+    /**
+     * interns granary names into dense int ids as roads are specified and keeps the roads in growable primitive
+     * arrays, so building the FlowNetwork needs no further hashing
+     * id 0 is reserved for the super source, and the names table is indexed by id (null for unnamed vertices)
+     * names are looked up in an open addressing table of int slots keyed on their UTF-8 bytes, which are kept back
+     * to back in one byte array: no boxed ids, and the road file loader can look a name up straight from the file,
+     * only building a String the first time it sees the name.  a name that is pure ASCII is hashed and compared
+     * char by char, so edgeExists doesn't encode it either
+     */
+    class RoadMapBuilder {
+        private int[] slots=new int[64];          // slots[k] = id + 1 of the name hashed there, 0 if empty
+        private int named=0;                      // names in the table
+        private byte[] utf8=new byte[1024];       // the UTF-8 bytes of every name, back to back
+        private int utf8Used=0;
+        private int[] nameStart=new int[16];      // nameStart[id] = where the bytes of the name of id start in utf8
+        private int[] nameLength=new int[16];
+        private int[] nameHash=new int[16];
+        private String[] names=new String[16];
+        private int vertexCount=1;
+        private int[] from=new int[16];
+        private int[] to=new int[16];
+        private int[] capacity=new int[16];
+        private int[] cost=new int[16];
+        private int roadCount=0;
+        // returns the id of name, assigning the next free id if it hasn't been seen before
+        public int intern(String name) {
+            int id = idOf(name);
+            if (id >= 0) return id;
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            int hash = 0;
+            for (byte b : bytes) hash = 31*hash + (b & 0xff);
+            return add(name, bytes, 0, bytes.length, hash);
+        }
+        // returns the id of the name held as UTF-8 in window[from,to), assigning the next free id if it is new
+        public int intern(ByteBuffer window, int from, int to) {
+            int hash = 0;
+            for (int i = from; i < to; i++) hash = 31*hash + (window.get(i) & 0xff);
+            int length = to - from;
+            for (int k = slot(hash); slots[k] != 0; k = (k+1) & (slots.length-1)) {
+                int id = slots[k] - 1;
+                if (nameHash[id] != hash || nameLength[id] != length) continue;
+                int i = 0;
+                while (i < length && utf8[nameStart[id]+i] == window.get(from+i)) i++;
+                if (i == length) return id;
+            }
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) bytes[i] = window.get(from+i);
+            return add(new String(bytes, StandardCharsets.UTF_8), bytes, 0, length, hash);
+        }
+        // returns the id of name, or -1 if it hasn't been seen
+        public int idOf(String name) {
+            int length = name.length();
+            int hash = 0;
+            for (int i = 0; i < length; i++) {
+                char c = name.charAt(i);
+                if (c >= 0x80) return idOfEncoded(name);
+                hash = 31*hash + c;
+            }
+            for (int k = slot(hash); slots[k] != 0; k = (k+1) & (slots.length-1)) {
+                int id = slots[k] - 1;
+                if (nameHash[id] != hash || nameLength[id] != length) continue;
+                int i = 0;
+                while (i < length && utf8[nameStart[id]+i] == name.charAt(i)) i++;
+                if (i == length) return id;
+            }
+            return -1;
+        }
+        private int idOfEncoded(String name) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            int hash = 0;
+            for (byte b : bytes) hash = 31*hash + (b & 0xff);
+            for (int k = slot(hash); slots[k] != 0; k = (k+1) & (slots.length-1)) {
+                int id = slots[k] - 1;
+                if (nameHash[id] == hash && nameLength[id] == bytes.length
+                        && Arrays.equals(utf8, nameStart[id], nameStart[id]+bytes.length, bytes, 0, bytes.length))
+                    return id;
+            }
+            return -1;
+        }
+        private int slot(int hash) {
+            return (hash ^ (hash >>> 16)) & (slots.length-1);
+        }
+        // gives name, whose UTF-8 bytes are bytes[from,to), the next free id
+        private int add(String name, byte[] bytes, int from, int to, int hash) {
+            int id = reserveVertex();
+            int length = to - from;
+            if (utf8Used + length > utf8.length) utf8 = Arrays.copyOf(utf8, Math.max(2*utf8.length, utf8Used+length));
+            System.arraycopy(bytes, from, utf8, utf8Used, length);
+            names[id] = name;
+            nameStart[id] = utf8Used;
+            nameLength[id] = length;
+            nameHash[id] = hash;
+            utf8Used += length;
+            if (2*(named+1) > slots.length) {
+                // rehash at half full, so probe runs stay short
+                int[] old = slots;
+                slots = new int[2*old.length];
+                for (int entry : old)
+                    if (entry != 0) {
+                        int k = slot(nameHash[entry-1]);
+                        while (slots[k] != 0) k = (k+1) & (slots.length-1);
+                        slots[k] = entry;
+                    }
+            }
+            int k = slot(hash);
+            while (slots[k] != 0) k = (k+1) & (slots.length-1);
+            slots[k] = id + 1;
+            named++;
+            return id;
+        }
+        // claims an id that has no name, such as the super sink
+        public int reserveVertex() {
+            if (vertexCount == names.length) {
+                names = Arrays.copyOf(names, 2*vertexCount);
+                nameStart = Arrays.copyOf(nameStart, 2*vertexCount);
+                nameLength = Arrays.copyOf(nameLength, 2*vertexCount);
+                nameHash = Arrays.copyOf(nameHash, 2*vertexCount);
+            }
+            return vertexCount++;
+        }
+        public String name(int id) {return names[id];}
+        public int vertexCount() {return vertexCount;}
+        public int roadCount() {return roadCount;}
+        public void addRoad(int src, int dest, int cap, int roadCost) {
+            if (roadCount == from.length) {
+                from = Arrays.copyOf(from, 2*roadCount);
+                to = Arrays.copyOf(to, 2*roadCount);
+                capacity = Arrays.copyOf(capacity, 2*roadCount);
+                cost = Arrays.copyOf(cost, 2*roadCount);
+            }
+            from[roadCount] = src;
+            to[roadCount] = dest;
+            capacity[roadCount] = cap;
+            cost[roadCount] = roadCost;
+            roadCount++;
+        }
+        // index of the most recently added road from src to dest, -1 if there is none
+        public int lastRoad(int src, int dest) {
+            for (int i = roadCount - 1; i >= 0; i--)
+                if (from[i] == src && to[i] == dest) return i;
+            return -1;
+        }
+    }
+    /** The bushels per hour moved along one road by a MinCostSolution.
+     */
+    public static class RoadFlow{
+        private final String src;
+        private final String dest;
+        private final long flow;
+        private final int cost;
+        public RoadFlow(String src, String dest, long flow, int cost){
+            this.src=src;
+            this.dest=dest;
+            this.flow=flow;
+            this.cost=cost;
+        }
+        public String getSrc(){return this.src;}
+        public String getDest(){return this.dest;}
+        public long getFlow(){return this.flow;}
+        public int getCost(){return this.cost;}
+    }
+    /** Where the time and work of one solveIt or resolveIt call went, as
+     * handed to a SolveListener.  The augmenting path, BFS and arc counts are
+     * only kept by the FORD_FULKERSON and CAPACITY_SCALING engines (and by
+     * resolveIt, which always augments), and are 0 for the others.
+     */
+    public static class SolveMetrics{
+        private final MaxFlowEngine engine;
+        private final long augmentingPaths;
+        private final long bfsRuns;
+        private final long arcsScanned;
+        private final long buildNanos;
+        private final long maxFlowNanos;
+        private final long minCutNanos;
+        public SolveMetrics(MaxFlowEngine engine, long augmentingPaths, long bfsRuns, long arcsScanned,
+                            long buildNanos, long maxFlowNanos, long minCutNanos){
+            this.engine=engine;
+            this.augmentingPaths=augmentingPaths;
+            this.bfsRuns=bfsRuns;
+            this.arcsScanned=arcsScanned;
+            this.buildNanos=buildNanos;
+            this.maxFlowNanos=maxFlowNanos;
+            this.minCutNanos=minCutNanos;
+        }
+        public MaxFlowEngine getEngine(){return this.engine;}
+        public long getAugmentingPaths(){return this.augmentingPaths;}
+        public long getBfsRuns(){return this.bfsRuns;}
+        // adjacency entries examined by all the BFS runs together
+        public long getArcsScanned(){return this.arcsScanned;}
+        // building the flow network from the roads, or resetting its flow on a repeat solveIt; 0 for resolveIt
+        public long getBuildNanos(){return this.buildNanos;}
+        public long getMaxFlowNanos(){return this.maxFlowNanos;}
+        public long getMinCutNanos(){return this.minCutNanos;}
+        @Override
+        public String toString(){
+            return "SolveMetrics{engine="+engine+", augmentingPaths="+augmentingPaths+", bfsRuns="+bfsRuns+
+                    ", arcsScanned="+arcsScanned+", buildNanos="+buildNanos+", maxFlowNanos="+maxFlowNanos+
+                    ", minCutNanos="+minCutNanos+"}";
+        }
+    }
+    /** Receives the SolveMetrics of every solveIt and resolveIt call, see
+     * setSolveListener.  Called on the thread that made the call, before it
+     * returns.
+     */
+    public interface SolveListener{
+        void solved(SolveMetrics metrics);
+    }
+    /** One route of the flow found by solveIt: the granaries it passes
+     * through in order, and the bushels per hour it carries.  A path runs from
+     * an X granary to a Y granary; a cycle returns from its last granary to its
+     * first, and moves no bushels anywhere.
+     */
+    public static class FlowPath{
+        private final List<String> granaries;
+        private final long flow;
+        private final boolean cycle;
+        public FlowPath(List<String> granaries, long flow, boolean cycle){
+            this.granaries=Collections.unmodifiableList(granaries);
+            this.flow=flow;
+            this.cycle=cycle;
+        }
+        public List<String> getGranaries(){return this.granaries;}
+        public long getFlow(){return this.flow;}
+        public boolean isCycle(){return this.cycle;}
+    }
+    /** A candidate new capacity for one road, for evaluateCapacityChanges.
+     */
+    public static class CapacityChange{
+        private final String src;
+        private final String dest;
+        private final int capacity;
+        public CapacityChange(String src, String dest, int capacity){
+            this.src=src;
+            this.dest=dest;
             this.capacity=capacity;
         }
-        public String getFrom(){return this.from;}
-        public String getTo(){return this.to;}
+        public String getSrc(){return this.src;}
+        public String getDest(){return this.dest;}
         public int getCapacity(){return this.capacity;}
     }
+    /** The result of solveMinCost.
+     */
+    public static class MinCostSolution{
+        private final double hours;
+        private final long cost;
+        private final List<RoadFlow> roadFlows;
+        public MinCostSolution(double hours, long cost, List<RoadFlow> roadFlows){
+            this.hours=hours;
+            this.cost=cost;
+            this.roadFlows=Collections.unmodifiableList(roadFlows);
+        }
+        // minimum number of hours to move BUSHELS_TO_MOVE bushels, as returned by solveIt
+        public double getHours(){return this.hours;}
+        // total cost per hour of the cheapest routing of the maximum flow
+        public long getCost(){return this.cost;}
+        // one entry for every road
+        public List<RoadFlow> getRoadFlows(){return this.roadFlows;}
+    }
     public final static double BUSHELS_TO_MOVE = 10_000;
-    private List<InitialEntryPreMappingStringToInt> edgesToMap;
-    private Map<String,Integer> StringToIntegerMapping;
-    private Map<Integer,String> IntegerToStringMapping;
-    private Set<String> vertices;
-    private String[] x;
-    private String[] y;
+    final static int ROAD_FILE_WINDOW = 64 << 20;   // bytes of the road file mapped at a time
+    private RoadMapBuilder roads;
+    private int[] x;
+    private int[] y;
     boolean solved=false;
     private FlowNetwork g;
-    private FordFulkerson ff;
+    private long flowValue;        // value of the flow g currently carries
+    private List<String> minCut;   // X side of the min-cut, computed once at the end of solveIt
+    private MaxFlowEngine engine=MaxFlowEngine.FORD_FULKERSON;
+    private int parallelism=Runtime.getRuntime().availableProcessors();
+    private SolveListener listener=null;     // null unless metrics were asked for, so solves don't even read the clock
     private int V;
+    private int sink;
+    private int[] superEdge;       // superEdge[v] = the super source edge into v if v is in X, the super sink edge out of v if in Y, else -1
     /** Constructor.
      *
      * @param X labelling of the overfull granaries, must contain at least one
@@ -273,14 +1585,11 @@ public class OverfullGranaries {
      * element and no duplicates.  No element of Y can be an element of X.
      */
     public OverfullGranaries(final String[] X, final String[] Y) {
-        this.edgesToMap= new ArrayList<>();
-        this.StringToIntegerMapping=new HashMap<>();
-        this.IntegerToStringMapping=new HashMap<>();
-        this.vertices=new HashSet<>();
-        this.x=X;
-        this.y=Y;
-        for(String x: X){this.vertices.add(x);}
-        for(String y:Y){this.vertices.add(y);}
+        this.roads=new RoadMapBuilder();
+        this.x=new int[X.length];
+        this.y=new int[Y.length];
+        for(int i=0;i<X.length;i++){this.x[i]=this.roads.intern(X[i]);}
+        for(int i=0;i<Y.length;i++){this.y[i]=this.roads.intern(Y[i]);}
     }
 
     /** Specifies that an edge exists from the specified src to the specified
@@ -296,9 +1605,282 @@ public class OverfullGranaries {
      */
     public void edgeExists(final String src, final String dest, final int capacity)
     {
-        this.vertices.add(src);
-        this.vertices.add(dest);
-        this.edgesToMap.add(new InitialEntryPreMappingStringToInt(src,dest,capacity));
+        this.edgeExists(src,dest,capacity,0);
+    }
+    /** Specifies a road as edgeExists(src, dest, capacity) does, together
+     * with the cost of moving one bushel along it.  Costs are only used by
+     * solveMinCost.
+     *
+     * @param cost must be non-negative, the cost per bushel moved along the road
+     */
+    public void edgeExists(final String src, final String dest, final int capacity, final int cost)
+    {
+        if(cost<0){throw new IllegalArgumentException("cost must be non-negative");}
+        int from=this.vertexId(src);
+        int to=this.vertexId(dest);
+        this.addRoad(from,to,capacity,cost);
+    }
+    // specifies the road between two interned vertices
+    private void addRoad(int from,int to,int capacity,int cost){
+        if(this.solved){
+            // the network already exists, so the road goes straight into it and resolveIt picks it up
+            this.g.addEdge(from,to,capacity,cost);
+            this.widenSuperEdges(from,to,capacity);
+            return;
+        }
+        this.roads.addRoad(from,to,capacity,cost);
+    }
+    /** Specifies every road listed in a file, exactly as if edgeExists had
+     * been invoked for each line in order.  Each non-blank line holds one road
+     * as "src,dest,capacity" (UTF-8, the capacity in decimal).  The file is
+     * read in a single pass through a memory-mapped window that slides over
+     * it, so beyond the roads themselves heap use doesn't grow with the size
+     * of the file.  Lines are parsed in place: names are looked up straight
+     * from the window's bytes and roads go into the road arrays, so the only
+     * objects allocated are the Strings of granaries named for the first time.
+     *
+     * @param roadFile the file to read
+     * @throws IOException if the file can't be read
+     * @throws IllegalArgumentException if a line isn't of the above form
+     */
+    public void loadRoads(final Path roadFile) throws IOException {
+        this.loadRoads(roadFile,ROAD_FILE_WINDOW);
+    }
+    // loadRoads, mapping windowSize bytes of the file at a time (no line may be longer)
+    void loadRoads(final Path roadFile, final int windowSize) throws IOException {
+        if(windowSize<=0){throw new IllegalArgumentException("windowSize must be positive");}
+        try(FileChannel channel=FileChannel.open(roadFile,StandardOpenOption.READ)){
+            long size=channel.size();
+            long position=0;
+            long line=1;
+            while(position<size){
+                int length=(int)Math.min(windowSize,size-position);
+                boolean last=position+length==size;
+                ByteBuffer window=channel.map(FileChannel.MapMode.READ_ONLY,position,length);
+                // only complete lines are parsed, a line cut off by the end of the window starts the next one
+                int lineStart=0;
+                for(int i=0;i<length;i++){
+                    if(window.get(i)=='\n'){
+                        this.parseRoad(window,lineStart,i,line++);
+                        lineStart=i+1;
+                    }
+                }
+                if(last&&lineStart<length){
+                    this.parseRoad(window,lineStart,length,line++);
+                    lineStart=length;
+                }
+                if(lineStart==0){throw new IllegalArgumentException("line "+line+" is longer than "+windowSize+" bytes");}
+                position+=lineStart;
+            }
+        }
+    }
+    // parses the road in window[from,to) and specifies it
+    private void parseRoad(ByteBuffer window,int from,int to,long line){
+        if(to>from&&window.get(to-1)=='\r'){to--;}
+        if(to==from){return;}
+        int firstComma=-1;
+        int lastComma=-1;
+        for(int i=from;i<to;i++){
+            if(window.get(i)==','){
+                if(firstComma<0){firstComma=i;}
+                lastComma=i;
+            }
+        }
+        if(firstComma<0||firstComma==lastComma||lastComma==to-1){
+            throw new IllegalArgumentException("line "+line+" is not of the form src,dest,capacity");
+        }
+        long capacity=0;
+        for(int i=lastComma+1;i<to;i++){
+            byte b=window.get(i);
+            if(b<'0'||b>'9'){throw new IllegalArgumentException("line "+line+" has a malformed capacity");}
+            capacity=capacity*10+(b-'0');
+            if(capacity>Integer.MAX_VALUE){throw new IllegalArgumentException("line "+line+" has a capacity larger than an int");}
+        }
+        int src=this.vertexAdded(this.roads.intern(window,from,firstComma));
+        int dest=this.vertexAdded(this.roads.intern(window,firstComma+1,lastComma));
+        this.addRoad(src,dest,(int)capacity,0);
+    }
+    /** Changes the capacity of the road from src to dest.  If edgeExists was
+     * invoked more than once for the pair, the most recently specified road is
+     * changed.  After solveIt, a capacity decrease below the flow currently on
+     * the road is repaired immediately by rerouting or cancelling only the
+     * excess; clients then invoke resolveIt to bring the solution up to date.
+     *
+     * @param src the src of a road previously specified by edgeExists
+     * @param dest the dest of a road previously specified by edgeExists
+     * @param capacity the new capacity, must be non-negative (0 closes the road)
+     * @throws IllegalArgumentException if no such road exists or capacity is negative
+     */
+    public void changeCapacity(final String src, final String dest, final int capacity) {
+        if(capacity<0){throw new IllegalArgumentException("capacity must be non-negative");}
+        int from=this.roads.idOf(src);
+        int to=this.roads.idOf(dest);
+        if(!this.solved){
+            int i=from<0||to<0?-1:this.roads.lastRoad(from,to);
+            if(i<0){throw new IllegalArgumentException("no road from "+src+" to "+dest);}
+            this.roads.capacity[i]=capacity;
+            return;
+        }
+        int road=from<0||to<0?-1:this.g.lastEdge(from,to);
+        if(road<0){throw new IllegalArgumentException("no road from "+src+" to "+dest);}
+        long excess=this.g.flow(road)-capacity;
+        long delta=capacity-this.g.capacity(road);
+        this.g.changeCapacity(road,capacity);
+        if(excess>0){this.repairOverflow(road,excess);}
+        this.widenSuperEdges(from,to,delta);
+    }
+    /** Breaks the current flow down into routes whose flows add up to it on
+     * every road: at most one per road, each either a path or a cycle.  Routes
+     * come in the order they are found, so paths and cycles can be
+     * interleaved: a cycle that the search for the next path runs into comes
+     * before that path.  Each route is only worked out when the iterator is
+     * advanced to it, so dispatch can begin before the decomposition is done,
+     * and clients that only want the paths should skip cycles rather than stop
+     * at the first one.  The iterator
+     * works on a snapshot of the flow at the time of the call.
+     *
+     * @return an iterator over the routes of the flow
+     * @note clients may only invoke this method after solveIt has been
+     * successfully invoked.  Else throw an ISE.
+     */
+    public Iterator<FlowPath> flowPaths() {
+        if(!this.solved){throw new IllegalStateException("tried to invoke flowPaths() before solveIt()");}
+        return new FlowDecomposition(this.g,0,this.sink);
+    }
+    /** Answers "what if" for a batch of road capacity changes: for each
+     * candidate on its own, the hours solveIt would return if only that road's
+     * capacity were changed.  The road map and the current solution are left
+     * as they are.  Every candidate starts from the flow already in place
+     * rather than solving from scratch, and candidates are evaluated in
+     * parallel on setMaxFlowParallelism threads.
+     *
+     * @param changes each names a road previously specified by edgeExists (the
+     * last one, if there are several from src to dest) and a non-negative new
+     * capacity for it
+     * @return hours[i] = the minimum number of hours with changes.get(i) applied
+     * @throws IllegalArgumentException if a road doesn't exist or a capacity
+     * is negative
+     * @note clients may only invoke this method after solveIt has been
+     * successfully invoked.  Else throw an ISE.
+     */
+    public double[] evaluateCapacityChanges(final List<CapacityChange> changes) {
+        if(!this.solved){throw new IllegalStateException("tried to invoke evaluateCapacityChanges() before solveIt()");}
+        if(changes==null){throw new IllegalArgumentException("changes can't be null");}
+        this.g.compact();
+        int n=changes.size();
+        int[] arc=new int[n];
+        int[] sourceArc=new int[n];
+        int[] sinkArc=new int[n];
+        long[] capacity=new long[n];
+        for(int i=0;i<n;i++){
+            CapacityChange change=changes.get(i);
+            if(change.getCapacity()<0){throw new IllegalArgumentException("capacity must be non-negative");}
+            int from=this.roads.idOf(change.getSrc());
+            int to=this.roads.idOf(change.getDest());
+            int road=from<0||to<0?-1:this.g.lastEdge(from,to);
+            if(road<0){throw new IllegalArgumentException("no road from "+change.getSrc()+" to "+change.getDest());}
+            arc[i]=this.g.edgeArc[road];
+            sourceArc[i]=this.fedBySuperSource(from)?this.g.edgeArc[this.superEdge[from]]:-1;
+            sinkArc[i]=this.drainedBySuperSink(to)?this.g.edgeArc[this.superEdge[to]]:-1;
+            capacity[i]=change.getCapacity();
+        }
+        long[] value=new long[n];
+        ThreadLocal<WhatIf> workspace=ThreadLocal.withInitial(()->new WhatIf(this.g));
+        ForkJoinPool pool=new ForkJoinPool(this.parallelism);
+        try{
+            pool.submit(()->IntStream.range(0,n).parallel().forEach(i->
+                value[i]=workspace.get().evaluate(0,this.sink,arc[i],sourceArc[i],sinkArc[i],capacity[i],this.flowValue))).join();
+        }
+        finally{
+            pool.shutdown();
+        }
+        double[] hours=new double[n];
+        for(int i=0;i<n;i++){
+            hours[i]=value[i]==0?Double.POSITIVE_INFINITY:BUSHELS_TO_MOVE/value[i];
+        }
+        return hours;
+    }
+    // the road now carries excess more than its capacity: take the excess off it, which leaves that much surplus at
+    // its tail and deficit at its head.  Reroute what we can from tail to head, and cancel the rest back to the
+    // source and from the sink, so only the part of the flow that used the road is touched
+    private void repairOverflow(int road,long excess){
+        int tail=this.g.from(road);
+        int head=this.g.to(road);
+        this.g.addResidualFlow(this.g.rev[this.g.edgeArc[road]],excess);
+        FordFulkerson repair=new FordFulkerson(this.g);
+        long rerouted=repair.augment(this.g,tail,head,excess);
+        long cancelled=excess-rerouted;
+        if(cancelled>0){
+            repair.augment(this.g,tail,0,cancelled);
+            repair.augment(this.g,this.sink,head,cancelled);
+            this.flowValue-=cancelled;
+        }
+    }
+    /** Brings the solution up to date after edgeExists or changeCapacity calls
+     * made since the last solve.  Augments from the flow already in place
+     * rather than solving from scratch, so the work done is proportional to
+     * the change.
+     *
+     * @return the minimum number hours needed to move BUSHELS_TO_MOVE bushels
+     * on the current road map, as for solveIt.
+     * @note clients may only invoke this method after solveIt has been
+     * successfully invoked.  Else throw an ISE.
+     */
+    public double resolveIt() {
+        if(!this.solved){throw new IllegalStateException("tried to invoke resolveIt() before solveIt()");}
+        long start=this.listener==null?0:System.nanoTime();
+        FordFulkerson ff=new FordFulkerson(this.g,0,this.sink);
+        this.flowValue+=ff.value();
+        return this.finish(MaxFlowEngine.FORD_FULKERSON,ff,start,start);
+    }
+    // keeps the super edges as wide as the roads they feed after a road from src to dest changed capacity by delta
+    // (the flow on them never exceeds the new width, since any overflow on the road has already been repaired)
+    private void widenSuperEdges(int from,int to,long delta){
+        if(this.fedBySuperSource(from)){
+            this.g.changeCapacity(this.superEdge[from],this.g.capacity(this.superEdge[from])+delta);
+        }
+        if(this.drainedBySuperSink(to)){
+            this.g.changeCapacity(this.superEdge[to],this.g.capacity(this.superEdge[to])+delta);
+        }
+    }
+    // whether v is an X granary, with a super source edge into it
+    private boolean fedBySuperSource(int v){
+        return v<this.superEdge.length&&this.superEdge[v]>=0&&this.g.from(this.superEdge[v])==0;
+    }
+    // whether v is a Y granary, with a super sink edge out of it
+    private boolean drainedBySuperSink(int v){
+        return v<this.superEdge.length&&this.superEdge[v]>=0&&this.g.to(this.superEdge[v])==this.sink;
+    }
+    // interns a vertex name, adding the vertex to the network if it first appears after solveIt
+    private int vertexId(String name){
+        return this.vertexAdded(this.roads.intern(name));
+    }
+    // adds the vertex of a just interned id to the network if it first appears after solveIt
+    private int vertexAdded(int id){
+        if(this.solved&&id==this.g.V()){
+            this.g.addVertex();
+            this.V=this.g.V();
+        }
+        return id;
+    }
+    /** Selects the max flow algorithm used by solveIt.  Every engine produces
+     * the same max flow value and the same min-cut.
+     *
+     * @param engine the algorithm to use, defaults to FORD_FULKERSON
+     * @note clients may only invoke this method before solveIt.
+     */
+    public void setMaxFlowEngine(final MaxFlowEngine engine) {
+        if(engine==null){throw new IllegalArgumentException("engine can't be null");}
+        this.engine=engine;
+    }
+    /** Sets the number of threads used by the PARALLEL_PUSH_RELABEL engine.
+     *
+     * @param threads must be at least 1, defaults to the number of available
+     * processors
+     */
+    public void setMaxFlowParallelism(final int threads) {
+        if(threads<1){throw new IllegalArgumentException("threads must be at least 1");}
+        this.parallelism=threads;
     }
     /** Solves the OverfullGranaries problem.
      *
@@ -309,39 +1891,116 @@ public class OverfullGranaries {
      * calls have been successfully invoked.
      */
     public double solveIt() {
+        long start=this.listener==null?0:System.nanoTime();
+        if(this.solved){
+            // the network (including any incremental changes) already exists, so solve it again from zero flow
+            this.g.resetFlow();
+        }
+        else{
+            this.buildNetwork();
+        }
         this.solved=true;
-        this.V=vertices.size()+2;;
-        this.StringToIntegerMapping.put("Noam",0);
-        this.StringToIntegerMapping.put("Mayerfeld",V-1);
-        this.IntegerToStringMapping.put(0,"Noam");
-        this.IntegerToStringMapping.put(V-1,"Mayerfeld");
-        int counter=1;
-        for(String vertice:this.vertices){
-            if(counter>V-1){throw new IllegalStateException("error creating mappings - more vertices than space in graph");}
-            this.StringToIntegerMapping.put(vertice,counter);
-            this.IntegerToStringMapping.put(counter,vertice);
-            counter++;
+        long built=this.listener==null?0:System.nanoTime();
+        MaxFlowSolver ff;
+        switch(this.engine){
+            case PUSH_RELABEL: ff=new PushRelabel(g,0,sink); break;
+            case DINIC: ff=new Dinic(g,0,sink); break;
+            case CAPACITY_SCALING: ff=new FordFulkerson(g,0,sink,true); break;
+            case PARALLEL_PUSH_RELABEL: ff=new ParallelPushRelabel(g,0,sink,this.parallelism); break;
+            default: ff=new FordFulkerson(g,0,sink);
         }
+        this.flowValue=ff.value();
+        return this.finish(this.engine,ff,start,built);
+    }
+    // computes the hours and the min cut, and reports to the listener (if any) on the solve by used that began at
+    // start and finished building the network at built
+    private double finish(MaxFlowEngine used,MaxFlowSolver ff,long start,long built){
+        if(this.listener==null){return this.hours();}
+        long flowed=System.nanoTime();
+        double hours=this.hours();
+        long cut=System.nanoTime();
+        long paths=0,runs=0,arcs=0;
+        if(ff instanceof FordFulkerson){
+            FordFulkerson counted=(FordFulkerson)ff;
+            paths=counted.augmentingPaths();
+            runs=counted.bfsRuns();
+            arcs=counted.arcsScanned();
+        }
+        this.listener.solved(new SolveMetrics(used,paths,runs,arcs,built-start,flowed-built,cut-flowed));
+        return hours;
+    }
+    /** Turns on metrics: every later solveIt and resolveIt call reports a
+     * SolveMetrics to the listener.  With no listener (the default) solves
+     * skip the timing altogether.  solveMinCost never reports: it has no
+     * max flow engine to name and no augmenting path counts.
+     *
+     * @param listener receives the metrics, or null to turn them off again
+     */
+    public void setSolveListener(final SolveListener listener) {
+        this.listener=listener;
+    }
+    /** Solves the OverfullGranaries problem as solveIt does, but among all the
+     * ways of moving the maximum number of bushels per hour, picks the one of
+     * least total cost, using the per-bushel costs given to edgeExists (roads
+     * specified without a cost are free).  Afterwards minCut and resolveIt
+     * behave as after solveIt, although resolveIt only keeps the flow
+     * maximum, not cheapest.
+     *
+     * @return the minimum number of hours, the cost per hour of the cheapest
+     * routing that achieves it, and the bushels per hour on every road.
+     */
+    public MinCostSolution solveMinCost() {
+        if(this.solved){
+            this.g.resetFlow();
+        }
+        else{
+            this.buildNetwork();
+        }
+        this.solved=true;
+        MinCostFlow mcf=new MinCostFlow(this.g,0,this.sink);
+        this.flowValue=mcf.value();
+        double hours=this.hours();
+        List<RoadFlow> roadFlows=new ArrayList<>();
+        for(int v=1;v<this.V;v++){
+            if(v==this.sink){continue;}
+            for(int a=this.g.start[v];a<this.g.start[v+1];a++){
+                int e=this.g.arcEdge[a];
+                if(this.g.isForward(a)&&this.g.to(e)!=this.sink){
+                    roadFlows.add(new RoadFlow(this.roads.name(v),this.roads.name(this.g.to(e)),this.g.flow(e),this.g.cost(e)));
+                }
+            }
+        }
+        return new MinCostSolution(hours,mcf.cost(),roadFlows);
+    }
+    private void buildNetwork(){
+        this.sink=this.roads.reserveVertex();
+        this.V=this.roads.vertexCount();
         this.g=new FlowNetwork(V);
-        for(InitialEntryPreMappingStringToInt I: this.edgesToMap){
-            int from=this.StringToIntegerMapping.get(I.getFrom());
-            int to=this.StringToIntegerMapping.get(I.getTo());
-            int capacity=I.getCapacity();
-            this.g.addEdge(new FlowEdge(from,to,capacity));
-        }
-        for(String s:this.x){
-            int from=0;
-            int to=this.StringToIntegerMapping.get(s);
-            this.g.addEdge(new FlowEdge(from,to,Integer.MAX_VALUE));
-        }
-        for(String s:this.y){
-            int from=this.StringToIntegerMapping.get(s);
-            int to=V-1;
-            this.g.addEdge(new FlowEdge(from,to,Integer.MAX_VALUE));
-        }
-        this.ff=new FordFulkerson(g,0,V-1);
-        if(this.ff.value==0){return Double.POSITIVE_INFINITY;}
-        return 10000.0/this.ff.value();
+        for(int i=0;i<this.roads.roadCount();i++){
+            this.g.addEdge(this.roads.from[i],this.roads.to[i],this.roads.capacity[i],this.roads.cost[i]);
+        }
+        // no more can leave the super source towards an X granary than that granary's roads carry away, and no more
+        // can reach the super sink from a Y granary than its roads bring in, so those sums stand in for infinite
+        // capacity without overflowing anything downstream
+        long[] roadCapacity=new long[V];
+        for(int i=0;i<this.roads.roadCount();i++){
+            roadCapacity[this.roads.from[i]]+=this.roads.capacity[i];
+            roadCapacity[this.roads.to[i]]+=this.roads.capacity[i];
+        }
+        this.superEdge=new int[V];
+        Arrays.fill(this.superEdge,-1);
+        for(int to:this.x){
+            this.superEdge[to]=this.g.addEdge(0,to,roadCapacity[to],0);
+        }
+        for(int from:this.y){
+            this.superEdge[from]=this.g.addEdge(from,this.sink,roadCapacity[from],0);
+        }
+    }
+    // refreshes the cached min-cut and converts the current flow value into hours
+    private double hours(){
+        this.minCut=this.computeMinCut();
+        if(this.flowValue==0){return Double.POSITIVE_INFINITY;}
+        return 10000.0/this.flowValue;
     }
 
     /** Return the names of all vertices in the X side of the min-cut, sorted by
@@ -353,21 +2012,19 @@ public class OverfullGranaries {
      */
     public List<String> minCut() {
         if(!this.solved){throw new IllegalStateException("tried to invoke minCut() before solveIt()");}
-        if(this.ff.value()==0){return new ArrayList<>();}
-        Set<String> mc=new HashSet<>();
-        for(String s: this.x){
-            mc.add(s);
-            boolean[] reachableFromS=this.ff.getMarkedFromSpecificVertexNotSource(this.g,this.StringToIntegerMapping.get(s),this.V-1);
-            for(int i=0;i<reachableFromS.length;i++){
-                if(reachableFromS[i]){mc.add(this.IntegerToStringMapping.get(i));}
-            }
-        }
-        mc.remove("Noam");
-        mc.remove("Mayerfeld");
+        return this.minCut;
+    }
+    // the X side of the cut is everything reachable in the residual graph from any X granary,
+    // found with one multi-source traversal instead of a separate search per granary
+    private List<String> computeMinCut(){
+        if(this.flowValue==0){return Collections.emptyList();}
+        boolean[] reachable=this.g.residualReachableFrom(this.x);
         List<String> results=new ArrayList<>();
-        for(String s :mc){results.add(s);}
+        for(int i=1;i<this.V;i++){
+            if(reachable[i]&&i!=this.sink){results.add(this.roads.name(i));}
+        }
         Collections.sort(results);
-        return results;
+        return Collections.unmodifiableList(results);
     }
 
 } // OverfullGranaries
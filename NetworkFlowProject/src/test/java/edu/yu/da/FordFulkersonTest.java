@@ -0,0 +1,44 @@
+package edu.yu.da;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class FordFulkersonTest {
+    private static final int SEARCHES=10000;
+
+    @Test
+    public void hasAugmentingPathAllocatesNothing(){
+        com.sun.management.ThreadMXBean threads=(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        OverfullGranaries outer=new OverfullGranaries(new String[]{"x"},new String[]{"y"});
+        Random random=new Random(42);
+        int n=2000;
+        OverfullGranaries.FlowNetwork G=outer.new FlowNetwork(n);
+        for(int e=0;e<10*n;e++){
+            G.addEdge(random.nextInt(n),random.nextInt(n),1+random.nextInt(1000),0);
+        }
+        OverfullGranaries.FordFulkerson ff=outer.new FordFulkerson(G);
+        long tid=Thread.currentThread().getId();
+        // the searches that find a path, then the ones that don't once the flow is maximal
+        for(boolean saturated:new boolean[]{false,true}){
+            if(saturated) ff.augment(G,0,n-1,Long.MAX_VALUE);
+            // warm up, so the measured searches run compiled code
+            for(int i=0;i<SEARCHES;i++) ff.hasAugmentingPath(G,0,n-1);
+            long before=threads.getThreadAllocatedBytes(tid);
+            boolean found=true;
+            for(int i=0;i<SEARCHES;i++) found&=ff.hasAugmentingPath(G,0,n-1);
+            long after=threads.getThreadAllocatedBytes(tid);
+            if(saturated) assertFalse(found);
+            else assertTrue(found);
+            assertEquals(before,after,(after-before)+" bytes allocated by "+SEARCHES+" searches, saturated="+saturated);
+        }
+    }
+}
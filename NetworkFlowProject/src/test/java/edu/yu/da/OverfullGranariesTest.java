@@ -0,0 +1,556 @@
+package edu.yu.da;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class OverfullGranariesTest {
+    private static final long INFINITY=Long.MAX_VALUE/4;
+
+    // a random road map from the X granaries, through middle granaries, to the Y granaries
+    static class RoadMap{
+        final String[] x;
+        final String[] y;
+        final List<String> sources=new ArrayList<>();
+        final List<String> destinations=new ArrayList<>();
+        final List<String[]> roads=new ArrayList<>();
+        final List<int[]> capacityAndCost=new ArrayList<>();
+        RoadMap(Random random, int xs, int ys, int middles, int roadCount, int widest, int costliest){
+            this.x=new String[xs];
+            this.y=new String[ys];
+            for(int i=0;i<xs;i++) x[i]="x"+i;
+            for(int i=0;i<ys;i++) y[i]="y"+i;
+            sources.addAll(Arrays.asList(x));
+            for(int i=0;i<middles;i++){
+                sources.add("m"+i);
+                destinations.add("m"+i);
+            }
+            destinations.addAll(Arrays.asList(y));
+            for(int i=0;i<roadCount;i++){
+                String src=sources.get(random.nextInt(sources.size())), dest=destinations.get(random.nextInt(destinations.size()));
+                if(!src.equals(dest)) add(src,dest,1+random.nextInt(widest),random.nextInt(costliest+1));
+            }
+        }
+        // a small random road map, capacities sometimes narrow enough for many ties, sometimes past 2^30
+        static RoadMap small(int trial){
+            Random random=new Random(trial);
+            int[] widest={3,1000,1<<30};
+            return new RoadMap(random,1+random.nextInt(4),1+random.nextInt(4),random.nextInt(20),random.nextInt(100),
+                    widest[trial%widest.length],trial%4==0?1:50);
+        }
+        void add(String src, String dest, int capacity, int cost){
+            roads.add(new String[]{src,dest});
+            capacityAndCost.add(new int[]{capacity,cost});
+        }
+        OverfullGranaries solver(){
+            OverfullGranaries solver=new OverfullGranaries(x,y);
+            for(int i=0;i<roads.size();i++){
+                solver.edgeExists(roads.get(i)[0],roads.get(i)[1],capacityAndCost.get(i)[0],capacityAndCost.get(i)[1]);
+            }
+            return solver;
+        }
+    }
+
+    // a plain Edmonds-Karp on a capacity matrix, with uncapped super source and sink edges: the flow and its min cut
+    static class Reference{
+        long flow=0;
+        final List<String> minCut=new ArrayList<>();
+        Reference(RoadMap map){
+            Map<String,Integer> id=new HashMap<>();
+            List<String> names=new ArrayList<>();
+            for(String name:map.x) id.put(name,id.size()+2);
+            for(String name:map.y) id.put(name,id.size()+2);
+            for(String[] road:map.roads){
+                for(String name:road) id.putIfAbsent(name,id.size()+2);
+            }
+            int n=id.size()+2;
+            names.addAll(Collections.nCopies(n,null));
+            id.forEach((name,v)->names.set(v,name));
+            long[][] residual=new long[n][n];
+            for(String name:map.x) residual[0][id.get(name)]=INFINITY;
+            for(String name:map.y) residual[id.get(name)][1]=INFINITY;
+            for(int i=0;i<map.roads.size();i++){
+                residual[id.get(map.roads.get(i)[0])][id.get(map.roads.get(i)[1])]+=map.capacityAndCost.get(i)[0];
+            }
+            int[] parent=new int[n];
+            while(true){
+                Arrays.fill(parent,-1);
+                parent[0]=0;
+                int[] queue=new int[n];
+                int head=0, tail=0;
+                queue[tail++]=0;
+                while(head<tail){
+                    int v=queue[head++];
+                    for(int w=0;w<n;w++){
+                        if(parent[w]<0&&residual[v][w]>0){
+                            parent[w]=v;
+                            queue[tail++]=w;
+                        }
+                    }
+                }
+                if(parent[1]<0){
+                    if(flow>0){
+                        for(int v=2;v<n;v++){
+                            if(parent[v]>=0) minCut.add(names.get(v));
+                        }
+                        Collections.sort(minCut);
+                    }
+                    return;
+                }
+                long bottleneck=INFINITY;
+                for(int v=1;v!=0;v=parent[v]) bottleneck=Math.min(bottleneck,residual[parent[v]][v]);
+                for(int v=1;v!=0;v=parent[v]){
+                    residual[parent[v]][v]-=bottleneck;
+                    residual[v][parent[v]]+=bottleneck;
+                }
+                flow+=bottleneck;
+            }
+        }
+        double hours(){
+            return flow==0?Double.POSITIVE_INFINITY:OverfullGranaries.BUSHELS_TO_MOVE/flow;
+        }
+    }
+
+    @Test
+    public void everyEngineMatchesTheReferenceOn600RandomNetworks(){
+        for(int trial=0;trial<600;trial++){
+            RoadMap map=RoadMap.small(trial);
+            Reference reference=new Reference(map);
+            for(OverfullGranaries.MaxFlowEngine engine:OverfullGranaries.MaxFlowEngine.values()){
+                OverfullGranaries solver=map.solver();
+                solver.setMaxFlowEngine(engine);
+                solver.setMaxFlowParallelism(1+trial%3);
+                assertEquals(reference.hours(),solver.solveIt(),engine+", trial "+trial);
+                assertEquals(reference.minCut,solver.minCut(),engine+" min cut, trial "+trial);
+            }
+        }
+    }
+
+    @Test
+    public void resolveMatchesSolvingAfresh(){
+        for(int trial=0;trial<400;trial++){
+            RoadMap map=RoadMap.small(trial);
+            Random random=new Random(-trial);
+            OverfullGranaries solver=map.solver();
+            solver.setMaxFlowEngine(OverfullGranaries.MaxFlowEngine.values()[trial%OverfullGranaries.MaxFlowEngine.values().length]);
+            solver.solveIt();
+            for(int round=0;round<5;round++){
+                for(int change=1+random.nextInt(4);change>0;change--){
+                    int kind=random.nextInt(4);
+                    if(kind<2&&!map.roads.isEmpty()){
+                        // changeCapacity changes the most recently added road between the two granaries
+                        String[] picked=map.roads.get(random.nextInt(map.roads.size()));
+                        int road=-1;
+                        for(int i=0;i<map.roads.size();i++){
+                            if(Arrays.equals(picked,map.roads.get(i))) road=i;
+                        }
+                        int[] capacity=map.capacityAndCost.get(road);
+                        capacity[0]=kind==0?random.nextInt(5):capacity[0]+random.nextInt(20);
+                        solver.changeCapacity(picked[0],picked[1],capacity[0]);
+                    }
+                    else{
+                        // a new road, from and to a granary seen before or one never seen
+                        String src=map.sources.get(random.nextInt(map.sources.size()));
+                        String dest=kind==3?"n"+round+"_"+change:map.destinations.get(random.nextInt(map.destinations.size()));
+                        if(src.equals(dest)) continue;
+                        int capacity=1+random.nextInt(20);
+                        map.add(src,dest,capacity,0);
+                        solver.edgeExists(src,dest,capacity);
+                        String onward=map.destinations.get(random.nextInt(map.destinations.size()));
+                        if(kind==3&&!onward.equals(dest)){
+                            map.add(dest,onward,capacity,0);
+                            solver.edgeExists(dest,onward,capacity);
+                        }
+                    }
+                }
+                Reference reference=new Reference(map);
+                assertEquals(reference.hours(),solver.resolveIt(),"round "+round+", trial "+trial);
+                assertEquals(reference.minCut,solver.minCut(),"min cut after round "+round+", trial "+trial);
+            }
+        }
+    }
+
+    @Test
+    public void evaluateCapacityChangesMatchesApplyingEachOne(){
+        for(int trial=0;trial<300;trial++){
+            RoadMap map=RoadMap.small(trial);
+            if(map.roads.isEmpty()) continue;
+            Random random=new Random(-trial);
+            OverfullGranaries solver=map.solver();
+            solver.setMaxFlowEngine(OverfullGranaries.MaxFlowEngine.values()[trial%OverfullGranaries.MaxFlowEngine.values().length]);
+            double hours=solver.solveIt();
+            List<String> cut=solver.minCut();
+            List<OverfullGranaries.CapacityChange> changes=new ArrayList<>();
+            List<Double> expected=new ArrayList<>();
+            for(int c=0;c<20;c++){
+                String[] picked=map.roads.get(random.nextInt(map.roads.size()));
+                int road=-1;
+                for(int i=0;i<map.roads.size();i++){
+                    if(Arrays.equals(picked,map.roads.get(i))) road=i;
+                }
+                int[] capacity=map.capacityAndCost.get(road);
+                int was=capacity[0];
+                capacity[0]=random.nextBoolean()?random.nextInt(was+1):was+random.nextInt(Math.min(was,1000)+1);
+                changes.add(new OverfullGranaries.CapacityChange(picked[0],picked[1],capacity[0]));
+                expected.add(new Reference(map).hours());
+                capacity[0]=was;
+            }
+            double[] evaluated=solver.evaluateCapacityChanges(changes);
+            for(int c=0;c<changes.size();c++){
+                assertEquals(expected.get(c),evaluated[c],"change "+c+", trial "+trial);
+            }
+            assertEquals(cut,solver.minCut(),"min cut after evaluating, trial "+trial);
+            assertEquals(hours,solver.resolveIt(),"resolve after evaluating, trial "+trial);
+        }
+    }
+
+    @Test
+    public void solveMinCostMatchesBellmanFordShortestPaths(){
+        for(int trial=0;trial<400;trial++){
+            RoadMap map=RoadMap.small(trial);
+            OverfullGranaries.MinCostSolution solution=map.solver().solveMinCost();
+            long[] expected=cheapestMaxFlow(map);
+            assertEquals(expected[0]==0?Double.POSITIVE_INFINITY:OverfullGranaries.BUSHELS_TO_MOVE/expected[0],
+                    solution.getHours(),"hours, trial "+trial);
+            assertEquals(expected[1],solution.getCost(),"cost, trial "+trial);
+            // the road flows are a flow of that cost: within capacity, and conserved at every middle granary
+            assertEquals(map.roads.size(),solution.getRoadFlows().size(),"road flows, trial "+trial);
+            Map<String,Long> net=new HashMap<>();
+            long cost=0;
+            for(int i=0;i<map.roads.size();i++){
+                OverfullGranaries.RoadFlow flow=solution.getRoadFlows().get(i);
+                assertTrue(flow.getFlow()>=0&&flow.getFlow()<=capacityOf(map,flow.getSrc(),flow.getDest(),flow.getCost()),
+                        "road "+flow.getSrc()+" "+flow.getDest()+", trial "+trial);
+                cost+=flow.getFlow()*flow.getCost();
+                net.merge(flow.getSrc(),-flow.getFlow(),Long::sum);
+                net.merge(flow.getDest(),flow.getFlow(),Long::sum);
+            }
+            assertEquals(expected[1],cost,"cost of the road flows, trial "+trial);
+            for(String granary:map.destinations){
+                if(granary.startsWith("m")) assertEquals(0L,net.getOrDefault(granary,0L),granary+", trial "+trial);
+            }
+        }
+    }
+
+    // the total capacity of the roads from src to dest at that cost, which a road flow of them can't exceed
+    private static long capacityOf(RoadMap map, String src, String dest, int cost){
+        long capacity=0;
+        for(int i=0;i<map.roads.size();i++){
+            if(map.roads.get(i)[0].equals(src)&&map.roads.get(i)[1].equals(dest)&&map.capacityAndCost.get(i)[1]==cost){
+                capacity+=map.capacityAndCost.get(i)[0];
+            }
+        }
+        return capacity;
+    }
+
+    // successive shortest paths with Bellman-Ford, from an uncapped super source to an uncapped super sink: the max
+    // flow and its least cost
+    private static long[] cheapestMaxFlow(RoadMap map){
+        Map<String,Integer> id=new HashMap<>();
+        for(String name:map.x) id.put(name,id.size()+2);
+        for(String name:map.y) id.put(name,id.size()+2);
+        for(String[] road:map.roads){
+            for(String name:road) id.putIfAbsent(name,id.size()+2);
+        }
+        int n=id.size()+2;
+        List<long[]> arcs=new ArrayList<>();   // from, to, residual capacity, cost, with arc k^1 the reverse of arc k
+        for(String name:map.x) addArc(arcs,0,id.get(name),INFINITY,0);
+        for(String name:map.y) addArc(arcs,id.get(name),1,INFINITY,0);
+        for(int i=0;i<map.roads.size();i++){
+            addArc(arcs,id.get(map.roads.get(i)[0]),id.get(map.roads.get(i)[1]),map.capacityAndCost.get(i)[0],
+                    map.capacityAndCost.get(i)[1]);
+        }
+        long flow=0, cost=0;
+        long[] distance=new long[n];
+        int[] parent=new int[n];
+        while(true){
+            Arrays.fill(distance,INFINITY);
+            distance[0]=0;
+            for(boolean relaxed=true;relaxed;){
+                relaxed=false;
+                for(int k=0;k<arcs.size();k++){
+                    long[] arc=arcs.get(k);
+                    int from=(int)arc[0], to=(int)arc[1];
+                    if(arc[2]>0&&distance[from]!=INFINITY&&distance[from]+arc[3]<distance[to]){
+                        distance[to]=distance[from]+arc[3];
+                        parent[to]=k;
+                        relaxed=true;
+                    }
+                }
+            }
+            if(distance[1]==INFINITY) return new long[]{flow,cost};
+            long bottleneck=INFINITY;
+            for(int v=1;v!=0;v=(int)arcs.get(parent[v])[0]) bottleneck=Math.min(bottleneck,arcs.get(parent[v])[2]);
+            for(int v=1;v!=0;v=(int)arcs.get(parent[v])[0]){
+                arcs.get(parent[v])[2]-=bottleneck;
+                arcs.get(parent[v]^1)[2]+=bottleneck;
+            }
+            flow+=bottleneck;
+            cost+=bottleneck*distance[1];
+        }
+    }
+
+    private static void addArc(List<long[]> arcs, int from, int to, long capacity, long cost){
+        arcs.add(new long[]{from,to,capacity,cost});
+        arcs.add(new long[]{to,from,0,-cost});
+    }
+
+    @Test
+    public void namesAreInternedWhateverTheirCharacters(){
+        // enough names to grow the name table several times, half of them not ASCII
+        int n=500;
+        String[] names=new String[n];
+        for(int i=0;i<n;i++){
+            names[i]=i%4==0?"g"+i:i%4==1?"gr\u00e4nary "+i:i%4==2?"\u7a40\u5009"+i:"silo \ud83c\udf3e"+i;
+        }
+        OverfullGranaries solver=new OverfullGranaries(new String[]{"x"},new String[]{"y"});
+        for(int i=0;i<n;i++){
+            solver.edgeExists("x",names[i],2);
+            solver.edgeExists(names[i],"y",i%2==0?1:3);
+        }
+        // the even granaries keep a unit of residual road from x, the odd ones are cut off
+        assertEquals(10000.0/(n/2*1+n/2*2),solver.solveIt());
+        List<String> expected=new ArrayList<>();
+        expected.add("x");
+        for(int i=0;i<n;i+=2) expected.add(names[i]);
+        Collections.sort(expected);
+        assertEquals(expected,solver.minCut());
+        // changeCapacity finds every name again
+        for(int i=1;i<n;i+=2) solver.changeCapacity("x",names[i],5);
+        assertEquals(10000.0/(n/2*1+n/2*3),solver.solveIt());
+        expected=new ArrayList<>(Arrays.asList(names));
+        expected.add("x");
+        Collections.sort(expected);
+        assertEquals(expected,solver.minCut());
+    }
+
+    @Test
+    public void loadRoadsParsesLinesWhereverTheWindowsFall(@TempDir Path dir) throws IOException{
+        for(int trial=0;trial<60;trial++){
+            Random random=new Random(trial);
+            RoadMap map=new RoadMap(random,1+random.nextInt(4),1+random.nextInt(4),random.nextInt(20),random.nextInt(100),1000,0);
+            // every other map has names that aren't ASCII, so lines hold multi-byte characters for the windows to cut
+            String suffix=trial%2==0?"":"\u00e4\u7a40";
+            String[] x=new String[map.x.length], y=new String[map.y.length];
+            for(int i=0;i<x.length;i++) x[i]=map.x[i]+suffix;
+            for(int i=0;i<y.length;i++) y[i]=map.y[i]+suffix;
+            OverfullGranaries expected=new OverfullGranaries(x,y);
+            StringBuilder file=new StringBuilder();
+            int longest=0;
+            for(int i=0;i<map.roads.size();i++){
+                String line=map.roads.get(i)[0]+suffix+","+map.roads.get(i)[1]+suffix+","+map.capacityAndCost.get(i)[0];
+                expected.edgeExists(map.roads.get(i)[0]+suffix,map.roads.get(i)[1]+suffix,map.capacityAndCost.get(i)[0]);
+                String end=random.nextBoolean()?"\n":"\r\n";
+                // the last line sometimes has no line terminator
+                if(i==map.roads.size()-1&&random.nextBoolean()) end="";
+                file.append(line).append(end);
+                longest=Math.max(longest,(line+end).getBytes(StandardCharsets.UTF_8).length);
+                if(random.nextInt(5)==0) file.append(random.nextBoolean()?"\n":"\r\n");
+            }
+            longest=Math.max(longest,2);
+            Path roads=dir.resolve("roads"+trial+".csv");
+            Files.write(roads,file.toString().getBytes(StandardCharsets.UTF_8));
+            double hours=expected.solveIt();
+            List<String> cut=expected.minCut();
+            for(int window:new int[]{longest,longest+1,longest+7,64,OverfullGranaries.ROAD_FILE_WINDOW}){
+                OverfullGranaries loaded=new OverfullGranaries(x,y);
+                loaded.loadRoads(roads,window);
+                assertEquals(hours,loaded.solveIt(),"trial "+trial+" window "+window);
+                assertEquals(cut,loaded.minCut(),"trial "+trial+" window "+window);
+            }
+            // loaded after solveIt, the roads go straight into the network
+            OverfullGranaries resolved=new OverfullGranaries(x,y);
+            resolved.solveIt();
+            resolved.loadRoads(roads,longest);
+            assertEquals(hours,resolved.resolveIt(),"trial "+trial+" loaded after solveIt");
+            assertEquals(cut,resolved.minCut(),"trial "+trial+" loaded after solveIt");
+        }
+    }
+
+    @Test
+    public void loadRoadsRejectsMalformedLines(@TempDir Path dir) throws IOException{
+        String[] malformed={"a,b","a,b,","a,b,1x","a,b,-1","a,b,3000000000","ab5",",5"};
+        for(int i=0;i<malformed.length;i++){
+            Path roads=dir.resolve("malformed"+i+".csv");
+            Files.write(roads,("x,a,1\r\n\n"+malformed[i]+"\na,y,1\n").getBytes(StandardCharsets.UTF_8));
+            OverfullGranaries solver=new OverfullGranaries(new String[]{"x"},new String[]{"y"});
+            IllegalArgumentException thrown=assertThrows(IllegalArgumentException.class,()->solver.loadRoads(roads),malformed[i]);
+            assertTrue(thrown.getMessage().startsWith("line 3 "),thrown.getMessage());
+        }
+        // a line that can't fit in one window
+        Path roads=dir.resolve("long.csv");
+        Files.write(roads,"x,a,1\nx,a-granary-with-a-long-name,1\n".getBytes(StandardCharsets.UTF_8));
+        OverfullGranaries solver=new OverfullGranaries(new String[]{"x"},new String[]{"y"});
+        IllegalArgumentException thrown=assertThrows(IllegalArgumentException.class,()->solver.loadRoads(roads,16));
+        assertTrue(thrown.getMessage().startsWith("line 2 "),thrown.getMessage());
+    }
+
+    @Test
+    public void theListenerHearsOfEverySolveOnce(){
+        OverfullGranaries solver=new OverfullGranaries(new String[]{"x"},new String[]{"y"});
+        solver.edgeExists("x","m",5);
+        solver.edgeExists("m","y",5);
+        List<OverfullGranaries.SolveMetrics> heard=new ArrayList<>();
+        solver.setSolveListener(heard::add);
+
+        solver.solveIt();
+        assertEquals(1,heard.size());
+        OverfullGranaries.SolveMetrics metrics=heard.get(0);
+        assertEquals(OverfullGranaries.MaxFlowEngine.FORD_FULKERSON,metrics.getEngine());
+        // one path, then the search that finds none
+        assertEquals(1,metrics.getAugmentingPaths());
+        assertEquals(2,metrics.getBfsRuns());
+        assertTrue(metrics.getArcsScanned()>0);
+        assertTrue(metrics.getBuildNanos()>=0&&metrics.getMaxFlowNanos()>=0&&metrics.getMinCutNanos()>=0);
+
+        solver.setMaxFlowEngine(OverfullGranaries.MaxFlowEngine.CAPACITY_SCALING);
+        solver.solveIt();
+        assertEquals(2,heard.size());
+        metrics=heard.get(1);
+        assertEquals(OverfullGranaries.MaxFlowEngine.CAPACITY_SCALING,metrics.getEngine());
+        // the path is found at threshold 4, then one failed search at each of 4, 2 and 1
+        assertEquals(1,metrics.getAugmentingPaths());
+        assertEquals(4,metrics.getBfsRuns());
+        assertTrue(metrics.getArcsScanned()>0);
+
+        solver.edgeExists("x","y",3);
+        solver.resolveIt();
+        assertEquals(3,heard.size());
+        metrics=heard.get(2);
+        assertEquals(OverfullGranaries.MaxFlowEngine.FORD_FULKERSON,metrics.getEngine());
+        assertEquals(1,metrics.getAugmentingPaths());
+        assertEquals(2,metrics.getBfsRuns());
+        assertEquals(0,metrics.getBuildNanos());
+
+        // the other engines report, with no augmenting path counts
+        solver.setMaxFlowEngine(OverfullGranaries.MaxFlowEngine.PUSH_RELABEL);
+        solver.solveIt();
+        assertEquals(4,heard.size());
+        assertEquals(OverfullGranaries.MaxFlowEngine.PUSH_RELABEL,heard.get(3).getEngine());
+        assertEquals(0,heard.get(3).getAugmentingPaths());
+
+        solver.solveMinCost();
+        assertEquals(4,heard.size(),"solveMinCost reported");
+        solver.setSolveListener(null);
+        solver.solveIt();
+        assertEquals(4,heard.size(),"reported with no listener");
+    }
+
+    @Test
+    public void flowPathsAddUpToTheFlow(){
+        for(int trial=0;trial<400;trial++){
+            RoadMap map=RoadMap.small(trial);
+            Reference reference=new Reference(map);
+            OverfullGranaries solver=map.solver();
+            solver.setMaxFlowEngine(OverfullGranaries.MaxFlowEngine.values()[trial%OverfullGranaries.MaxFlowEngine.values().length]);
+            solver.solveIt();
+            Map<String,Long> carried=routeFlows(map,solver.flowPaths(),reference.flow,"trial "+trial);
+            for(Map.Entry<String,Long> road:carried.entrySet()){
+                assertTrue(road.getValue()<=capacityBetween(map,road.getKey()),road.getKey()+", trial "+trial);
+            }
+            // solveMinCost is the one way to see the flow on every road, so the routes must add up to it exactly
+            Map<String,Long> onRoads=new HashMap<>();
+            for(OverfullGranaries.RoadFlow road:solver.solveMinCost().getRoadFlows()){
+                if(road.getFlow()>0) onRoads.merge(road.getSrc()+" "+road.getDest(),road.getFlow(),Long::sum);
+            }
+            assertEquals(onRoads,routeFlows(map,solver.flowPaths(),reference.flow,"min cost, trial "+trial),
+                    "min cost, trial "+trial);
+        }
+    }
+
+    @Test
+    public void flowPathsHandsOutCirculationsAsCycles(){
+        OverfullGranaries outer=new OverfullGranaries(new String[]{"x"},new String[]{"y"});
+        // interns a..f as 3..8 after x = 1 and y = 2
+        String[] roads={"x a","a y","a b","b c","c a","d e","e f","f d"};
+        for(String road:roads) outer.edgeExists(road.split(" ")[0],road.split(" ")[1],10);
+        int x=1, y=2, a=3, b=4, c=5, d=6, e=7, f=8, sink=9;
+        OverfullGranaries.FlowNetwork G=outer.new FlowNetwork(10);
+        G.addEdge(0,x,10,0);
+        G.addEdge(y,sink,10,0);
+        int[][] ends={{x,a},{a,y},{a,b},{b,c},{c,a},{d,e},{e,f},{f,d}};
+        for(int[] road:ends) G.addEdge(road[0],road[1],10,0);
+        OverfullGranaries.FordFulkerson ff=outer.new FordFulkerson(G);
+        // a path x a y, a cycle a b c on it, and a cycle d e f that the source can't reach
+        ff.augment(G,0,sink,3);
+        ff.augment(G,a,b,2);
+        ff.augment(G,b,c,2);
+        ff.augment(G,c,a,2);
+        ff.augment(G,d,e,1);
+        ff.augment(G,e,f,1);
+        ff.augment(G,f,d,1);
+        List<String> routes=new ArrayList<>();
+        for(Iterator<OverfullGranaries.FlowPath> it=outer.new FlowDecomposition(G,0,sink);it.hasNext();){
+            OverfullGranaries.FlowPath route=it.next();
+            List<String> granaries=new ArrayList<>(route.getGranaries());
+            if(route.isCycle()) Collections.sort(granaries);
+            routes.add(granaries+" "+route.getFlow()+(route.isCycle()?" cycle":""));
+        }
+        Collections.sort(routes);
+        assertEquals(List.of("[a, b, c] 2 cycle","[d, e, f] 1 cycle","[x, a, y] 3"),routes);
+    }
+
+    // adds up the routes on every road they use, checking that the paths run from X to Y and carry the whole flow
+    private static Map<String,Long> routeFlows(RoadMap map, Iterator<OverfullGranaries.FlowPath> routes, long flow, String where){
+        Map<String,Long> carried=new HashMap<>();
+        long delivered=0;
+        while(routes.hasNext()){
+            OverfullGranaries.FlowPath route=routes.next();
+            List<String> granaries=route.getGranaries();
+            assertTrue(route.getFlow()>0,where);
+            if(route.isCycle()){
+                assertTrue(granaries.size()>=2,where);
+                carried.merge(granaries.get(granaries.size()-1)+" "+granaries.get(0),route.getFlow(),Long::sum);
+            }
+            else{
+                assertTrue(Arrays.asList(map.x).contains(granaries.get(0)),granaries+", "+where);
+                assertTrue(Arrays.asList(map.y).contains(granaries.get(granaries.size()-1)),granaries+", "+where);
+                delivered+=route.getFlow();
+            }
+            for(int i=0;i+1<granaries.size();i++){
+                carried.merge(granaries.get(i)+" "+granaries.get(i+1),route.getFlow(),Long::sum);
+            }
+        }
+        assertEquals(flow,delivered,"flow delivered, "+where);
+        return carried;
+    }
+
+    // the total capacity of the roads from src to dest, given as "src dest"
+    private static long capacityBetween(RoadMap map, String road){
+        long capacity=0;
+        for(int i=0;i<map.roads.size();i++){
+            if(road.equals(map.roads.get(i)[0]+" "+map.roads.get(i)[1])) capacity+=map.capacityAndCost.get(i)[0];
+        }
+        return capacity;
+    }
+
+    @Test
+    public void parallelPushRelabelIsTheSameOnAnyNumberOfThreads(){
+        RoadMap map=new RoadMap(new Random(42),20,20,3000,30000,1000000,0);
+        OverfullGranaries sequential=map.solver();
+        double hours=sequential.solveIt();
+        for(int threads=1;threads<=4;threads++){
+            OverfullGranaries parallel=map.solver();
+            parallel.setMaxFlowEngine(OverfullGranaries.MaxFlowEngine.PARALLEL_PUSH_RELABEL);
+            parallel.setMaxFlowParallelism(threads);
+            assertEquals(hours,parallel.solveIt(),threads+" threads");
+            assertEquals(sequential.minCut(),parallel.minCut(),threads+" threads min cut");
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package edu.yu.da;
+
+import java.util.List;
+import java.util.Random;
+
+/** Times PARALLEL_PUSH_RELABEL on one large random road map with 1, 2, ...
+ * up to N threads and reports the speedup over a single thread, checking
+ * that every thread count finds the same hours and min cut as FORD_FULKERSON.
+ * Not a unit test, run it by hand on the machine being sized:
+ *
+ *   java -cp target/classes:target/test-classes edu.yu.da.ParallelPushRelabelBenchmark [N [middle granaries [roads]]]
+ *
+ * N defaults to the number of available processors, the map to 20000 middle
+ * granaries and 200000 roads.
+ */
+public class ParallelPushRelabelBenchmark {
+    private static final int ROUNDS=3;
+
+    public static void main(String[] args){
+        int maxThreads=args.length>0?Integer.parseInt(args[0]):Runtime.getRuntime().availableProcessors();
+        int middles=args.length>1?Integer.parseInt(args[1]):20000;
+        int roads=args.length>2?Integer.parseInt(args[2]):200000;
+        OverfullGranariesTest.RoadMap map=new OverfullGranariesTest.RoadMap(new Random(42),50,50,middles,roads,1000000,0);
+        OverfullGranaries sequential=map.solver();
+        double hours=sequential.solveIt();
+        List<String> cut=sequential.minCut();
+        System.out.printf("%d middle granaries, %d roads, %.6f hours%n",middles,roads,hours);
+        double single=0;
+        for(int threads=1;threads<=maxThreads;threads++){
+            OverfullGranaries parallel=map.solver();
+            parallel.setMaxFlowEngine(OverfullGranaries.MaxFlowEngine.PARALLEL_PUSH_RELABEL);
+            parallel.setMaxFlowParallelism(threads);
+            // the first solve builds the network and warms up the JIT, the rest solve it again from zero flow
+            parallel.solveIt();
+            double best=Double.MAX_VALUE;
+            for(int round=0;round<ROUNDS;round++){
+                long start=System.nanoTime();
+                double solved=parallel.solveIt();
+                best=Math.min(best,(System.nanoTime()-start)/1e6);
+                if(solved!=hours||!parallel.minCut().equals(cut)){
+                    throw new IllegalStateException(threads+" threads found "+solved+" hours, FORD_FULKERSON "+hours);
+                }
+            }
+            if(threads==1) single=best;
+            System.out.printf("%3d threads %10.1f ms %6.2fx%n",threads,best,single/best);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package edu.yu.da;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/** Dial's bucket queue, for Dijkstra on small non-negative integer weights.
+ * Dijkstra only ever queues keys between the last key it removed and that key
+ * plus the heaviest weight, so maxWeight+1 buckets used round robin hold every
+ * queued key, each bucket being a doubly linked list threaded through int
+ * arrays.  insert and decreaseKey are O(1), and delMin only ever steps
+ * forward past empty buckets, so a whole Dijkstra run is O(E + D) for D the
+ * longest distance found.
+ *
+ * Keys must never be below the last key removed, nor more than maxWeight
+ * above it, except that a new run may start from a lower key once the queue
+ * is empty.
+ */
+class BucketMinQueue implements IntMinQueue {
+    private final int[] first;  // first[b] = the first v in bucket b, -1 if it is empty
+    private final int[] next;   // next[v], prev[v] = the neighbours of v in its bucket, -1 at either end
+    private final int[] prev;
+    private final int[] key;
+    private final boolean[] queued;
+    private int size=0;
+    private int current=0;      // the last key removed, no queued key is below it
+    /**
+     * @param n the number of vs
+     * @param maxWeight the heaviest edge weight, must be non-negative
+     */
+    public BucketMinQueue(int n, int maxWeight) {
+        if(maxWeight<0) throw new IllegalArgumentException("maxWeight must be non-negative");
+        this.first=new int[maxWeight+1];
+        this.next=new int[n];
+        this.prev=new int[n];
+        this.key=new int[n];
+        this.queued=new boolean[n];
+        Arrays.fill(first, -1);
+    }
+    public boolean isEmpty() {return size==0;}
+    public boolean contains(int v) {return queued[v];}
+    public void insert(int v, int key) {
+        if(queued[v]) throw new IllegalArgumentException("index is already in the priority queue");
+        // an empty queue may start a new run from a lower key.  It can't skip ahead to a higher one, since
+        // Dijkstra empties the queue mid run whenever it removes the only city queued and may then queue keys
+        // anywhere from the last one removed
+        if(size==0&&key<current) current=key;
+        queued[v]=true;
+        size++;
+        link(v, key);
+    }
+    public void decreaseKey(int v, int key) {
+        if(!queued[v]) throw new NoSuchElementException("index is not in priority queue");
+        unlink(v);
+        link(v, key);
+    }
+    public int delMin() {
+        if(size==0) throw new NoSuchElementException("priority queue underflow");
+        while(first[current%first.length]==-1) current++;
+        int min=first[current%first.length];
+        current=key[min];
+        unlink(min);
+        queued[min]=false;
+        size--;
+        return min;
+    }
+    private void link(int v, int key) {
+        this.key[v]=key;
+        int b=key%first.length;
+        next[v]=first[b];
+        prev[v]=-1;
+        if(first[b]!=-1) prev[first[b]]=v;
+        first[b]=v;
+    }
+    private void unlink(int v) {
+        if(prev[v]!=-1) next[prev[v]]=next[v];
+        else first[key[v]%first.length]=next[v];
+        if(next[v]!=-1) prev[next[v]]=prev[v];
+    }
+}
@@ -83,107 +83,23 @@ public class FindDinner {
             return list;
         }
     }
-    public class IndexMinPQ<Key extends Comparable<Key>>{ //source: https://algs4.cs.princeton.edu/24pq/IndexMinPQ.java.html
-        private int maxN;
-        private int n;
-        private int[]pq;
-        private int[] qp;
-        private Key[] keys;
-
-        public IndexMinPQ(int maxN){
-            if(maxN<0) throw new IllegalArgumentException();
-            this.maxN=maxN;
-            n=0;
-            keys=(Key[])new Comparable[maxN+1];
-            pq=new int[maxN+1];
-            qp=new int[maxN+1];
-            for(int i=0;i<=maxN;i++){
-                qp[i]=-1;
-            }
-        }
-        public boolean isEmpty(){
-            return n==0;
-        }
-        public boolean contains(int i){
-            validateIndex(i);
-            return qp[i]!=-1;
-        }
-        public int size(){
-            return n;
-        }
-        public void insert(int i, Key key){
-            validateIndex(i);
-            if(contains(i)) throw new IllegalArgumentException("index is already in the priority queue");
-            n++;
-            qp[i]=n;
-            pq[n]=i;
-            keys[i]=key;
-            swim(n);
-        }
-        public int delMin(){
-            if(n==0) throw new NoSuchElementException("priority queue underflow");
-            int min=pq[1];
-            exch(1,n--);
-            sink(1);
-            assert min==pq[n+1];
-            qp[min]=-1;
-            keys[min]=null;
-            pq[n+1]=-1;
-            return min;
-        }
-        public void changeKey(int i,Key key){
-            validateIndex(i);
-            if(!contains(i)) throw new NoSuchElementException("index is not in priority queue");
-            keys[i]=key;
-            swim(qp[i]);
-            sink(qp[i]);
-        }
-        private void validateIndex(int i){
-            if(i<0) throw new IllegalArgumentException("index is negative: "+i);
-            if(i>=maxN) throw new IllegalArgumentException("index >= capacity: "+i);
-        }
-        private boolean greater(int i,int j){
-            return keys[pq[i]].compareTo(keys[pq[j]])>0;
-        }
-        private void exch(int i, int j){
-            int swap=pq[i];
-            pq[i]=pq[j];
-            pq[j]=swap;
-            qp[pq[i]]=j;
-            qp[pq[j]]=i;
-        }
-        private void swim(int k){
-            while(k>1 && greater(k/2,k)){
-                exch(k,k/2);
-                k=k/2;
-            }
-        }
-        private void sink(int k){
-            while(2*k<=n){
-                int j=2*k;
-                if(j<n &&greater(j,j+1)) j++;
-                if(!greater(k,j)) break;
-                exch(k,j);
-                k=j;
-            }
-        }
-    }
     private UndirectedEdgeWeightedGraph g;
     private Edge[] sourceSPTEdgeTo;
     private int[] sourceSPTDistTo;
-    private int[] sourceSPTNumNonDinnerPathsToVertex;
-    private int[] sourceSPTNumYesDinnerPathsToVertex;
-    private IndexMinPQ<Integer> sourceSPTPQ;
+    private int[] sourceSPTOrder;   // the cities the source tree settled, in the order it settled them
+    private int sourceSPTSettled=0;
+    private IntMinQueue sourceSPTPQ;
     private Edge[] destSPTEdgeTo;
     private int[] destSPTDistTo;
-    private IndexMinPQ<Integer> destSPTPQ;
-    private IndexMinPQ<Integer> thirdSPTPQ;
-    private Edge[] thirdSPTEdgeTo;
-    private int[] thirdSPTDistTo;
+    private int[] destSPTOrder;
+    private int destSPTSettled=0;
+    private IntMinQueue destSPTPQ;
+    // with highways this short the Dijkstras queue cities in buckets rather than a heap
+    private static final int BUCKET_QUEUE_MAX_WEIGHT=255;
+    private int maxWeight=0;
     private HashSet<Integer> citiesWithDinner;
     private boolean invokedSolveIt=false;
-    private boolean shiftedNumberOfDinnerPathsAwayFromThisVertex=false;
-    private int numShortestPathsWithDinner=0;
+    private int numShortestTrips=0;
     private int lengthOfShortestPath=Integer.MAX_VALUE;
     /** Constructor: clients specify the number of cities involved in the
      * problem.  Cities are numbered 1..n, and for convenience, the "start" city
@@ -198,21 +114,14 @@ public class FindDinner {
         this.g=new UndirectedEdgeWeightedGraph(nCities);
         this.sourceSPTEdgeTo=new Edge[g.V()];
         this.sourceSPTDistTo=new int[g.V()];
-        this.sourceSPTNumNonDinnerPathsToVertex=new int[g.V()];
-        this.sourceSPTNumYesDinnerPathsToVertex=new int[g.V()];
-        this.sourceSPTPQ=new IndexMinPQ<>(g.V());
+        this.sourceSPTOrder=new int[g.V()];
         this.destSPTEdgeTo=new Edge[g.V()];
         this.destSPTDistTo=new int[g.V()];
-        this.destSPTPQ=new IndexMinPQ<>(g.V());
-        this.thirdSPTDistTo=new int[g.V()];
-        this.thirdSPTEdgeTo= new Edge[g.V()];
-        this.thirdSPTPQ=new IndexMinPQ<>(g.V());
+        this.destSPTOrder=new int[g.V()];
         this.citiesWithDinner=new HashSet<>();
         for(int v=0;v<g.V();v++){
             sourceSPTDistTo[v]=Integer.MAX_VALUE;
             destSPTDistTo[v]=Integer.MAX_VALUE;
-            thirdSPTDistTo[v]=Integer.MAX_VALUE;
-            sourceSPTNumNonDinnerPathsToVertex[v]=1;
         }
     }
 
@@ -230,6 +139,7 @@ public class FindDinner {
         }
         Edge e=new Edge(city1-1,city2-1,duration);
         this.g.addEdge(e);
+        this.maxWeight=Math.max(this.maxWeight,duration);
     }
 
     /** Specifies that a minyan can be found in the specified city.
@@ -243,79 +153,122 @@ public class FindDinner {
         this.citiesWithDinner.add(city-1);
     }
 
+    private IntMinQueue newPQ(){
+        if(this.maxWeight<=BUCKET_QUEUE_MAX_WEIGHT) return new BucketMinQueue(g.V(),this.maxWeight);
+        return new IndexMinIntHeap(g.V());
+    }
     private void performDijkstra(){
+        // the queues are made here, once every highway and so the longest one is known.  Trips are only counted
+        // once both trees are grown, so the counts don't depend on which of two equally far cities a queue
+        // settles first
+        this.sourceSPTPQ=newPQ();
+        this.destSPTPQ=newPQ();
         destSPTPQ.insert(this.g.V()-1,0);
         destSPTDistTo[this.g.V()-1]=0;
         while(!destSPTPQ.isEmpty()){
-            destRelax(this.g,destSPTPQ.delMin());
+            int v=destSPTPQ.delMin();
+            destSPTOrder[destSPTSettled++]=v;
+            destRelax(this.g,v);
         }
         sourceSPTPQ.insert(0,0);
         sourceSPTDistTo[0]=0;
         while(!sourceSPTPQ.isEmpty()){
-            sourceRelax(this.g, sourceSPTPQ.delMin());
-        }
-        if(this.sourceSPTNumYesDinnerPathsToVertex[this.g.V()-1]==0){
-            this.sourceSPTNumYesDinnerPathsToVertex[this.g.V()-1]=-1;
+            int v=sourceSPTPQ.delMin();
+            sourceSPTOrder[sourceSPTSettled++]=v;
+            sourceRelax(this.g,v);
         }
         for(Integer i:this.citiesWithDinner){
-            int sum=sourceSPTDistTo[i]+destSPTDistTo[i];
+            if(!sourceHasPathTo(i)||!destHasPathTo(i)) continue;
+            long sum=(long)sourceSPTDistTo[i]+destSPTDistTo[i];
             if(sum<lengthOfShortestPath){
-                lengthOfShortestPath=sum;
+                lengthOfShortestPath=(int)sum;
             }
         }
-        //final dijkstra
-        thirdSPTPQ.insert(this.g.V()-1,0);
-        thirdSPTDistTo[this.g.V()-1]=0;
-        while(!thirdSPTPQ.isEmpty()){
-            int min=thirdSPTPQ.delMin();
-            if(this.sourceSPTNumYesDinnerPathsToVertex[min]!=-1&&(this.sourceSPTDistTo[min]+this.destSPTDistTo[min]==this.lengthOfShortestPath)){
-                this.numShortestPathsWithDinner+=this.sourceSPTNumYesDinnerPathsToVertex[min];
+        if(lengthOfShortestPath==Integer.MAX_VALUE) return;
+        // the diners a shortest trip can stop at
+        boolean[] stop=new boolean[this.g.V()];
+        for(Integer i:this.citiesWithDinner){
+            stop[i]=sourceHasPathTo(i)&&destHasPathTo(i)&&(long)sourceSPTDistTo[i]+destSPTDistTo[i]==lengthOfShortestPath;
+        }
+        // a trip is counted at the first diner it stops at: the ways there that pass no earlier stop, times the
+        // ways on to the goal
+        int[] toStop=countRoutes(sourceSPTDistTo,sourceSPTOrder,sourceSPTSettled,stop);
+        int[] fromStop=countRoutes(destSPTDistTo,destSPTOrder,destSPTSettled,null);
+        for(int v=0;v<this.g.V();v++){
+            if(stop[v]) this.numShortestTrips+=toStop[v]*fromStop[v];
+        }
+    }
+    /**
+     * counts the shortest routes from the root of a shortest path tree to each city.  Highways of zero duration
+     * would let a route cross back and forth between equally far cities forever, so a route only counts if each
+     * free highway it crosses leads one further from the nearest city that a costly highway (or the root) leads
+     * to at that distance.  Cities are taken in order of distance and then of free highways crossed, so every
+     * city's count is complete before it is passed on, whatever order the tree's queue settled them in
+     * @param dist the tree's distances
+     * @param order the cities the tree settled, nearest first, the root being order[0]
+     * @param stop if not null, routes end at the cities it marks, rather than passing through them
+     * @return the number of routes to each city, 0 for the cities the tree didn't reach
+     */
+    private int[] countRoutes(int[] dist,int[] order,int settled,boolean[] stop){
+        int V=this.g.V();
+        // free[v] = the free highways a route crosses into v since the last costly one, -1 until v is reached
+        int[] free=new int[V];
+        Arrays.fill(free,-1);
+        // the settled cities by distance and then by free highways crossed
+        int[] byFree=new int[settled];
+        int head=0, tail=0;
+        for(int start=0;start<settled;){
+            int end=start;
+            while(end<settled&&dist[order[end]]==dist[order[start]]) end++;
+            // a group of equally far cities is entered by costly highways (or is the root's own group)...
+            for(int i=start;i<end;i++){
+                int v=order[i];
+                boolean entered=i==0;
+                for(Edge e:g.adj(v)){
+                    if(entered) break;
+                    entered=e.weight()>0&&dist[v]-e.weight()==dist[e.other(v)];
+                }
+                if(entered){
+                    free[v]=0;
+                    byFree[tail++]=v;
+                }
+            }
+            // ...and the rest of it is reached breadth first along free highways
+            while(head<tail){
+                int v=byFree[head++];
+                for(Edge e:g.adj(v)){
+                    int w=e.other(v);
+                    if(e.weight()==0&&free[w]==-1){
+                        free[w]=free[v]+1;
+                        byFree[tail++]=w;
+                    }
+                }
+            }
+            start=end;
+        }
+        int[] routes=new int[V];
+        routes[order[0]]=1;
+        for(int i=0;i<settled;i++){
+            int v=byFree[i];
+            if(stop!=null&&stop[v]) continue;
+            for(Edge e:g.adj(v)){
+                int w=e.other(v);
+                boolean onward=e.weight()>0?dist[w]-e.weight()==dist[v]:free[w]==free[v]+1;
+                if(onward) routes[w]+=routes[v];
             }
-            thirdSPTRelax(this.g,min);
         }
+        return routes;
     }
     private void sourceRelax(UndirectedEdgeWeightedGraph g, int v){
         for(Edge e: g.adj(v)){
             int w=e.other(v);
-            int wDistFromSource=sourceSPTDistTo[w];
-            int vDistFromSource=sourceSPTDistTo[v];
-            int wDistFromDest=destSPTDistTo[w];
-            int vDistFromDest=destSPTDistTo[v];
-            int nonDinnerPathsToV=sourceSPTNumNonDinnerPathsToVertex[v];
-            int yesDinnerPathsToV=sourceSPTNumYesDinnerPathsToVertex[v];
-            boolean relevant=wDistFromDest<vDistFromDest||yesDinnerPathsToV==0;
-            if(wDistFromSource>vDistFromSource+e.weight()){
-                sourceSPTDistTo[w]=vDistFromSource+e.weight();
+            if(sourceSPTDistTo[w]>sourceSPTDistTo[v]+e.weight()){
+                sourceSPTDistTo[w]=sourceSPTDistTo[v]+e.weight();
                 sourceSPTEdgeTo[w]=e;
-                sourceSPTNumNonDinnerPathsToVertex[w]=nonDinnerPathsToV;
-                if(this.citiesWithDinner.contains(w)&&(relevant)) {
-                    sourceSPTNumYesDinnerPathsToVertex[w] = sourceSPTNumNonDinnerPathsToVertex[w];
-                    this.shiftedNumberOfDinnerPathsAwayFromThisVertex = true;
-                }
-                else if (relevant) {
-                    sourceSPTNumYesDinnerPathsToVertex[w] = yesDinnerPathsToV;
-                    this.shiftedNumberOfDinnerPathsAwayFromThisVertex = true;
-                }
-                if(sourceSPTPQ.contains(w)) sourceSPTPQ.changeKey(w,sourceSPTDistTo[w]);
+                if(sourceSPTPQ.contains(w)) sourceSPTPQ.decreaseKey(w,sourceSPTDistTo[w]);
                 else sourceSPTPQ.insert(w,sourceSPTDistTo[w]);
             }
-            else if(wDistFromSource==vDistFromSource+e.weight()){
-                sourceSPTNumNonDinnerPathsToVertex[w]+=nonDinnerPathsToV;
-                if(this.citiesWithDinner.contains(w)&&(relevant)) {
-                    sourceSPTNumYesDinnerPathsToVertex[w] += nonDinnerPathsToV;
-                    shiftedNumberOfDinnerPathsAwayFromThisVertex = true;
-                }
-                else if(relevant) {
-                    sourceSPTNumYesDinnerPathsToVertex[w] += yesDinnerPathsToV;
-                    this.shiftedNumberOfDinnerPathsAwayFromThisVertex = true;
-                }
-            }
-        }
-        //this line is new
-        if(shiftedNumberOfDinnerPathsAwayFromThisVertex){
-            this.sourceSPTNumYesDinnerPathsToVertex[v]=-1;
         }
-        shiftedNumberOfDinnerPathsAwayFromThisVertex=false;
     }
     private void destRelax(UndirectedEdgeWeightedGraph g, int v){
         for(Edge e: g.adj(v)){
@@ -323,22 +276,11 @@ public class FindDinner {
             if(destSPTDistTo[w]>destSPTDistTo[v]+e.weight()){
                 destSPTDistTo[w]=destSPTDistTo[v]+e.weight();
                 destSPTEdgeTo[w]=e;
-                if(destSPTPQ.contains(w)) destSPTPQ.changeKey(w,destSPTDistTo[w]);
+                if(destSPTPQ.contains(w)) destSPTPQ.decreaseKey(w,destSPTDistTo[w]);
                 else destSPTPQ.insert(w,destSPTDistTo[w]);
             }
         }
     }
-    private void thirdSPTRelax(UndirectedEdgeWeightedGraph g, int v){
-        for(Edge e: g.adj(v)){
-            int w=e.other(v);
-            if(thirdSPTDistTo[w]>thirdSPTDistTo[v]+e.weight()){
-                thirdSPTDistTo[w]=thirdSPTDistTo[v]+e.weight();
-                thirdSPTEdgeTo[w]=e;
-                if(thirdSPTPQ.contains(w)) thirdSPTPQ.changeKey(w,thirdSPTDistTo[w]);
-                else thirdSPTPQ.insert(w,thirdSPTDistTo[w]);
-            }
-        }
-    }
     //helper methods based on Sedgewick p649
     public boolean sourceHasPathTo(int v){
         return sourceSPTDistTo[v]<Integer.MAX_VALUE;
@@ -398,7 +340,11 @@ public class FindDinner {
     }
 
     /** Returns the number of distinct trips that satisfy the FindDinner
-     * constraints.
+     * constraints.  A trip is a shortest route to a city with a diner followed
+     * by a shortest route on from it to the goal, the two adding up to the
+     * shortest duration, and is counted once however many diners it passes.
+     * A trip never crosses a zero duration highway back towards the city the
+     * route it is part of came from, so the count is finite.
      *
      * @return number of shortest duration trips, undefined if client hasn't
      * previously invoked solveIt()..
@@ -407,10 +353,7 @@ public class FindDinner {
         if(!invokedSolveIt){
             throw new IllegalStateException("solveIt hasn't been invoked yet");
         }
-        if(this.citiesWithDinner.size()!=0&&this.sourceSPTNumYesDinnerPathsToVertex[this.g.V()-1]==-1){
-            return this.numShortestPathsWithDinner;
-        }
-        return this.sourceSPTNumYesDinnerPathsToVertex[this.g.V()-1];
+        return this.numShortestTrips;
     }
 
 } // FindDinner
@@ -0,0 +1,76 @@
+package edu.yu.da;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/** Indexed 4-ary min heap of the ints 0..n-1 keyed by int.  Four children per
+ * node halves the depth of a binary heap, so decrease-key swims half as far,
+ * and the four children sit next to each other in the array, so delMin picks
+ * the least of them from a single cache line.
+ */
+class IndexMinIntHeap implements IntMinQueue {
+    private final int[] heap;   // heap[p] = the v at position p, the children of p are at 4p+1..4p+4
+    private final int[] pos;    // pos[v] = position of v in heap, -1 if v is not queued
+    private final int[] key;
+    private int size=0;
+    public IndexMinIntHeap(int n) {
+        this.heap=new int[n];
+        this.pos=new int[n];
+        this.key=new int[n];
+        Arrays.fill(pos, -1);
+    }
+    public boolean isEmpty() {return size==0;}
+    public int size() {return size;}
+    public boolean contains(int v) {return pos[v]!=-1;}
+    public void insert(int v, int key) {
+        if(pos[v]!=-1) throw new IllegalArgumentException("index is already in the priority queue");
+        this.key[v]=key;
+        swim(size++, v);
+    }
+    public void decreaseKey(int v, int key) {
+        if(pos[v]==-1) throw new NoSuchElementException("index is not in priority queue");
+        this.key[v]=key;
+        swim(pos[v], v);
+    }
+    public int delMin() {
+        if(size==0) throw new NoSuchElementException("priority queue underflow");
+        int min=heap[0];
+        pos[min]=-1;
+        if(--size>0) sink(0, heap[size]);
+        return min;
+    }
+    // moves v up from position p to where it belongs, shifting the parents it passes down
+    private void swim(int p, int v) {
+        int k=key[v];
+        while(p>0){
+            int parent=(p-1)>>2;
+            int u=heap[parent];
+            if(key[u]<=k) break;
+            heap[p]=u;
+            pos[u]=p;
+            p=parent;
+        }
+        heap[p]=v;
+        pos[v]=p;
+    }
+    // moves v down from position p to where it belongs, shifting the least children it passes up
+    private void sink(int p, int v) {
+        int k=key[v];
+        while(true){
+            int first=4*p+1;
+            if(first>=size) break;
+            int last=Math.min(first+4, size);
+            int least=first;
+            for(int c=first+1;c<last;c++){
+                if(key[heap[c]]<key[heap[least]]) least=c;
+            }
+            int u=heap[least];
+            if(key[u]>=k) break;
+            heap[p]=u;
+            pos[u]=p;
+            p=least;
+        }
+        heap[p]=v;
+        pos[v]=p;
+    }
+}
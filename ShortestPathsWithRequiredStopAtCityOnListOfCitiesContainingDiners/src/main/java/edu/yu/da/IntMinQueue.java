@@ -0,0 +1,15 @@
+package edu.yu.da;
+
+/** A min priority queue of the ints 0..n-1 keyed by int, with decrease-key,
+ * as Dijkstra needs it.  Keys are primitive ints throughout, so nothing is
+ * boxed and no comparisons go through compareTo.
+ */
+interface IntMinQueue {
+    boolean isEmpty();
+    boolean contains(int v);
+    void insert(int v, int key);
+    // lowers the key of v, which must be queued, to key
+    void decreaseKey(int v, int key);
+    // removes and returns a v of least key
+    int delMin();
+}
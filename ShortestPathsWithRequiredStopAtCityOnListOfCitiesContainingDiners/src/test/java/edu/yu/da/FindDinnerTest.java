@@ -0,0 +1,166 @@
+package edu.yu.da;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FindDinnerTest {
+    // a small random map: highways as {city1, duration, city2}, cities numbered 1..n, and the cities with diners
+    private static class Map{
+        final int n;
+        final List<int[]> highways=new ArrayList<>();
+        final List<Integer> diners=new ArrayList<>();
+        Map(int trial, int shortest){
+            Random random=new Random(trial);
+            this.n=2+random.nextInt(6);
+            for(int e=random.nextInt(2*n);e>=0;e--){
+                int x=1+random.nextInt(n), y=1+random.nextInt(n);
+                if(x!=y) highways.add(new int[]{x,shortest+random.nextInt(4),y});
+            }
+            for(int city=1;city<=n;city++) if(random.nextInt(3)==0) diners.add(city);
+        }
+        // solves the map with its cities renumbered by to (which must keep 1 and n in place)
+        FindDinner solve(int[] to, List<int[]> extra){
+            FindDinner solution=new FindDinner(n);
+            for(int[] h:highways) solution.addHighway(to[h[0]],h[1],to[h[2]]);
+            for(int[] h:extra) solution.addHighway(h[0],h[1],h[2]);
+            for(int city:diners) solution.hasDinner(to[city]);
+            solution.solveIt();
+            return solution;
+        }
+        int[] identity(){
+            int[] to=new int[n+1];
+            for(int city=1;city<=n;city++) to[city]=city;
+            return to;
+        }
+    }
+
+    // the shortest duration by Floyd-Warshall, then the trips by counting every walk from 1 by its duration so far,
+    // which positive durations keep finite.  Parallel highways are distinct trips
+    private static class Walks{
+        long shortest=Long.MAX_VALUE;
+        long trips=0;
+        Walks(Map map){
+            int n=map.n;
+            boolean[] diner=new boolean[n+1];
+            for(int city:map.diners) diner[city]=true;
+            long[][] d=new long[n+1][n+1];
+            for(long[] row:d) Arrays.fill(row,Long.MAX_VALUE/4);
+            for(int city=1;city<=n;city++) d[city][city]=0;
+            for(int[] h:map.highways){
+                d[h[0]][h[2]]=Math.min(d[h[0]][h[2]],h[1]);
+                d[h[2]][h[0]]=d[h[0]][h[2]];
+            }
+            for(int k=1;k<=n;k++)
+                for(int i=1;i<=n;i++)
+                    for(int j=1;j<=n;j++) d[i][j]=Math.min(d[i][j],d[i][k]+d[k][j]);
+            for(int city:map.diners) if(d[1][city]+d[city][n]<Long.MAX_VALUE/4) shortest=Math.min(shortest,d[1][city]+d[city][n]);
+            if(shortest==Long.MAX_VALUE) return;
+            // walks[t][city][dined] = the walks from 1 that take t to reach city, having dined or not
+            long[][][] walks=new long[(int)shortest+1][n+1][2];
+            walks[0][1][diner[1]?1:0]=1;
+            for(int t=0;t<=shortest;t++)
+                for(int city=1;city<=n;city++)
+                    for(int dined=0;dined<2;dined++){
+                        if(walks[t][city][dined]==0) continue;
+                        for(int[] h:map.highways){
+                            int next=h[0]==city?h[2]:h[2]==city?h[0]:0;
+                            if(next==0||t+h[1]>shortest) continue;
+                            walks[t+h[1]][next][diner[next]?1:dined]+=walks[t][city][dined];
+                        }
+                    }
+            trips=walks[(int)shortest][n][1];
+        }
+    }
+
+    @Test
+    public void tripsMatchEveryWalkOnPositiveDurations(){
+        for(int trial=0;trial<1500;trial++){
+            Map map=new Map(trial,1);
+            Walks walks=new Walks(map);
+            FindDinner solution=map.solve(map.identity(),List.of());
+            if(walks.shortest==Long.MAX_VALUE){
+                assertEquals(Integer.MAX_VALUE,solution.shortestDuration(),"trial "+trial);
+                assertEquals(0,solution.numberOfShortestTrips(),"trial "+trial);
+                continue;
+            }
+            assertEquals(walks.shortest,solution.shortestDuration(),"trial "+trial);
+            assertEquals(walks.trips,solution.numberOfShortestTrips(),"trial "+trial);
+        }
+    }
+
+    @Test
+    public void zeroDurationTiesCountTheSameWhateverTheOrder(){
+        for(int trial=0;trial<1500;trial++){
+            Map map=new Map(trial,0);
+            FindDinner plain=map.solve(map.identity(),List.of());
+            // renumbering the cities between 1 and n changes which of two equally far cities a queue settles first
+            List<Integer> middle=new ArrayList<>();
+            for(int city=2;city<map.n;city++) middle.add(city);
+            Collections.shuffle(middle,new Random(trial));
+            int[] to=map.identity();
+            for(int i=0;i<middle.size();i++) to[i+2]=middle.get(i);
+            FindDinner renumbered=map.solve(to,List.of());
+            // a highway too long to be on any trip takes the heap rather than the buckets
+            FindDinner heap=map.solve(map.identity(),List.of(new int[]{1,1000,map.n}));
+            assertEquals(plain.shortestDuration(),renumbered.shortestDuration(),"trial "+trial);
+            assertEquals(plain.numberOfShortestTrips(),renumbered.numberOfShortestTrips(),"renumbered, trial "+trial);
+            if(plain.shortestDuration()<1000){
+                assertEquals(plain.shortestDuration(),heap.shortestDuration(),"trial "+trial);
+                assertEquals(plain.numberOfShortestTrips(),heap.numberOfShortestTrips(),"heap, trial "+trial);
+            }
+        }
+    }
+
+    @Test
+    public void freeHighwaysAreOnlyCrossedAwayFromWhereTheRouteCameFrom(){
+        // 1, 2 and 3 are all at 0 from 1, and all at 1 from 4: the one trip is 1 2 3 4, not also 1 2 1 3 4
+        FindDinner solution=new FindDinner(4);
+        solution.addHighway(1,0,2);
+        solution.addHighway(2,0,3);
+        solution.addHighway(1,0,3);
+        solution.addHighway(3,1,4);
+        solution.hasDinner(2);
+        solution.solveIt();
+        assertEquals(1,solution.shortestDuration());
+        assertEquals(1,solution.numberOfShortestTrips());
+        // two free ways from 1 to the diner at 3, then two costly ones on to 4
+        solution=new FindDinner(5);
+        solution.addHighway(1,0,2);
+        solution.addHighway(2,0,3);
+        solution.addHighway(1,0,3);
+        solution.addHighway(3,2,5);
+        solution.addHighway(3,1,4);
+        solution.addHighway(4,1,5);
+        solution.hasDinner(3);
+        solution.solveIt();
+        assertEquals(2,solution.shortestDuration());
+        assertEquals(2,solution.numberOfShortestTrips());
+    }
+
+    @Test
+    public void aDinerAtEitherEndIsOnEveryShortestTrip(){
+        FindDinner solution=new FindDinner(3);
+        solution.addHighway(1,2,2);
+        solution.addHighway(2,2,3);
+        solution.addHighway(1,4,3);
+        solution.hasDinner(1);
+        solution.solveIt();
+        assertEquals(4,solution.shortestDuration());
+        assertEquals(2,solution.numberOfShortestTrips());
+        solution=new FindDinner(3);
+        solution.addHighway(1,2,2);
+        solution.addHighway(2,2,3);
+        solution.addHighway(1,4,3);
+        solution.hasDinner(3);
+        solution.solveIt();
+        assertEquals(4,solution.shortestDuration());
+        assertEquals(2,solution.numberOfShortestTrips());
+    }
+}
@@ -0,0 +1,119 @@
+package edu.yu.da;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IntMinQueueTest {
+    // Dijkstra from 0 on a random graph with the queue, checking that every delMin is a least queued key
+    private static long[] dijkstra(IntMinQueue pq, int n, List<int[]> edges, String where){
+        long[] dist=new long[n];
+        Arrays.fill(dist,Long.MAX_VALUE);
+        boolean[] queued=new boolean[n];
+        dist[0]=0;
+        pq.insert(0,0);
+        queued[0]=true;
+        long last=0;
+        while(!pq.isEmpty()){
+            int v=pq.delMin();
+            assertTrue(queued[v],where);
+            queued[v]=false;
+            assertFalse(pq.contains(v),where);
+            for(int w=0;w<n;w++) if(queued[w]) assertTrue(dist[v]<=dist[w],where+": removed "+dist[v]+" before "+dist[w]);
+            assertTrue(last<=dist[v],where);
+            last=dist[v];
+            for(int[] e:edges){
+                int w=e[0]==v?e[1]:e[1]==v?e[0]:-1;
+                if(w<0||dist[w]<=dist[v]+e[2]) continue;
+                dist[w]=dist[v]+e[2];
+                if(pq.contains(w)) pq.decreaseKey(w,(int)dist[w]);
+                else{
+                    pq.insert(w,(int)dist[w]);
+                    queued[w]=true;
+                }
+            }
+        }
+        return dist;
+    }
+
+    private static long[] bellmanFord(int n, List<int[]> edges){
+        long[] dist=new long[n];
+        Arrays.fill(dist,Long.MAX_VALUE);
+        dist[0]=0;
+        for(int round=0;round<n;round++)
+            for(int[] e:edges){
+                if(dist[e[0]]!=Long.MAX_VALUE) dist[e[1]]=Math.min(dist[e[1]],dist[e[0]]+e[2]);
+                if(dist[e[1]]!=Long.MAX_VALUE) dist[e[0]]=Math.min(dist[e[0]],dist[e[1]]+e[2]);
+            }
+        return dist;
+    }
+
+    @Test
+    public void bothQueuesRunDijkstraWithZeroWeightTies(){
+        for(int trial=0;trial<500;trial++){
+            Random random=new Random(trial);
+            int n=1+random.nextInt(40);
+            // weights from 0 up, so many cities tie, some across zero weight edges
+            int maxWeight=trial%3==0?0:1+random.nextInt(trial%2==0?3:300);
+            List<int[]> edges=new ArrayList<>();
+            for(int e=random.nextInt(3*n+1);e>0;e--){
+                int x=random.nextInt(n), y=random.nextInt(n);
+                if(x!=y) edges.add(new int[]{x,y,random.nextInt(maxWeight+1)});
+            }
+            long[] expected=bellmanFord(n,edges);
+            assertEquals(Arrays.toString(expected),Arrays.toString(dijkstra(new IndexMinIntHeap(n),n,edges,"heap, trial "+trial)));
+            BucketMinQueue buckets=new BucketMinQueue(n,maxWeight);
+            assertEquals(Arrays.toString(expected),Arrays.toString(dijkstra(buckets,n,edges,"buckets, trial "+trial)));
+            // a second run from a lower key than the first one ended on reuses the same queue
+            assertEquals(Arrays.toString(expected),Arrays.toString(dijkstra(buckets,n,edges,"buckets again, trial "+trial)));
+        }
+    }
+
+    @Test
+    public void theHeapSortsAnyKeys(){
+        Random random=new Random(42);
+        for(int trial=0;trial<200;trial++){
+            int n=1+random.nextInt(100);
+            IndexMinIntHeap heap=new IndexMinIntHeap(n);
+            int[] key=new int[n];
+            for(int v=0;v<n;v++){
+                key[v]=random.nextInt(trial%2==0?5:Integer.MAX_VALUE);
+                heap.insert(v,key[v]);
+            }
+            // lower some keys, to below everything else at times
+            for(int v=0;v<n;v+=3){
+                key[v]=key[v]==0?0:random.nextInt(key[v]);
+                heap.decreaseKey(v,key[v]);
+            }
+            int[] sorted=key.clone();
+            Arrays.sort(sorted);
+            assertEquals(n,heap.size());
+            for(int i=0;i<n;i++){
+                int v=heap.delMin();
+                assertEquals(sorted[i],key[v],"trial "+trial);
+            }
+            assertTrue(heap.isEmpty());
+        }
+    }
+
+    @Test
+    public void misuseIsRejected(){
+        for(IntMinQueue pq:new IntMinQueue[]{new IndexMinIntHeap(3),new BucketMinQueue(3,2)}){
+            assertThrows(NoSuchElementException.class,pq::delMin);
+            assertThrows(NoSuchElementException.class,()->pq.decreaseKey(1,0));
+            pq.insert(1,2);
+            assertThrows(IllegalArgumentException.class,()->pq.insert(1,1));
+            assertEquals(1,pq.delMin());
+        }
+        assertThrows(IllegalArgumentException.class,()->new BucketMinQueue(3,-1));
+    }
+}